@@ -0,0 +1,377 @@
+package bguspl.set;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import static java.lang.String.format;
+
+/**
+ * Monte Carlo statistics of random deals: the probability of a table without a set, the number of reshuffles per game
+ * and the number of sets left on the table when the deck runs dry.
+ * <p>
+ * Usage: {@code Analytics [analytics.properties]} (see the analytics.properties resource for the available settings).
+ */
+public class Analytics {
+
+    /**
+     * The z value of the reported two-sided confidence intervals (95%).
+     */
+    private static final double Z = 1.96;
+
+    /**
+     * The maximum number of reshuffles in a simulated game (a game that reaches it is counted as stuck).
+     */
+    private static final int MAX_RESHUFFLES = 1000;
+
+    /**
+     * The statistics gathered by a single worker thread (merged once all workers are done).
+     */
+    private static class Accumulator {
+
+        private long deals;
+        private long dealsWithoutSet;
+        private final long[] setsOnTable;
+        private long games;
+        private long stuckGames;
+        private long reshuffles;
+        private long reshufflesSquared;
+        private final long[] reshufflesPerGame = new long[11];
+        private final long[] setsLeftWhenDry;
+
+        private Accumulator(int tableSize) {
+            setsOnTable = new long[tableSize * tableSize + 1];
+            setsLeftWhenDry = new long[tableSize * tableSize + 1];
+        }
+
+        private void merge(Accumulator other) {
+            deals += other.deals;
+            dealsWithoutSet += other.dealsWithoutSet;
+            games += other.games;
+            stuckGames += other.stuckGames;
+            reshuffles += other.reshuffles;
+            reshufflesSquared += other.reshufflesSquared;
+            for (int i = 0; i < setsOnTable.length; i++) setsOnTable[i] += other.setsOnTable[i];
+            for (int i = 0; i < setsLeftWhenDry.length; i++) setsLeftWhenDry[i] += other.setsLeftWhenDry[i];
+            for (int i = 0; i < reshufflesPerGame.length; i++) reshufflesPerGame[i] += other.reshufflesPerGame[i];
+        }
+    }
+
+    /**
+     * The per-thread simulation state. All the inner loops work on these preallocated primitive arrays only.
+     */
+    private static class Simulation {
+
+        private final Util util;
+        private final int setSize;
+        private final int tableSize;
+        private final SplittableRandom random;
+
+        /**
+         * The deck (cards at index >= deckLength were dealt or removed).
+         */
+        private final int[] deck;
+        private int deckLength;
+
+        /**
+         * The cards on the table and the membership bitmap of the cards being searched for sets.
+         */
+        private final int[] table;
+        private int tableLength;
+        private final boolean[] present;
+
+        /**
+         * The cards on the table followed by the cards in the deck.
+         */
+        private final int[] remaining;
+
+        /**
+         * Scratch buffers for the card combinations and the found set.
+         */
+        private final int[] combination;
+        private final int[] cards;
+        private final int[] found;
+
+        private Simulation(Config config, Util util, int tableSize, long seed) {
+            this.util = util;
+            this.setSize = config.featureSize;
+            this.tableSize = tableSize;
+            this.random = new SplittableRandom(seed);
+            deck = new int[config.deckSize];
+            table = new int[tableSize];
+            present = new boolean[config.deckSize];
+            remaining = new int[config.deckSize];
+            combination = new int[setSize];
+            cards = new int[setSize];
+            found = new int[setSize];
+        }
+
+        private void resetDeck() {
+            deckLength = deck.length;
+            for (int i = 0; i < deckLength; i++) deck[i] = i;
+            clearTable();
+        }
+
+        private void clearTable() {
+            for (int i = 0; i < tableLength; i++) present[table[i]] = false;
+            tableLength = 0;
+        }
+
+        private void deal() {
+            while (tableLength < tableSize && deckLength > 0) {
+                int index = random.nextInt(deckLength);
+                int card = deck[index];
+                deck[index] = deck[--deckLength];
+                table[tableLength++] = card;
+                present[card] = true;
+            }
+        }
+
+        private void returnTableToDeck() {
+            for (int i = 0; i < tableLength; i++) {
+                deck[deckLength++] = table[i];
+                present[table[i]] = false;
+            }
+            tableLength = 0;
+        }
+
+        private void removeFound() {
+            for (int card : found) {
+                present[card] = false;
+                for (int i = 0; i < tableLength; i++)
+                    if (table[i] == card) {
+                        table[i] = table[--tableLength];
+                        break;
+                    }
+            }
+        }
+
+        /**
+         * Checks whether the cards on the table and in the deck together still contain a set.
+         */
+        private boolean remainingHasSet() {
+            System.arraycopy(table, 0, remaining, 0, tableLength);
+            System.arraycopy(deck, 0, remaining, tableLength, deckLength);
+            for (int i = 0; i < deckLength; i++) present[deck[i]] = true;
+            boolean hasSet = countSets(remaining, tableLength + deckLength, 1) > 0;
+            for (int i = 0; i < deckLength; i++) present[deck[i]] = false;
+            return hasSet;
+        }
+
+        /**
+         * Counts the sets among the first length cards of pool (up to limit) and keeps the last one found.
+         * The cards of pool must be marked in the present bitmap.
+         */
+        private int countSets(int[] pool, int length, int limit) {
+            if (setSize < 1 || length < setSize) return 0;
+            int count = 0;
+            int k = setSize - 1;
+            if (k < 2) return countSetsByTest(pool, length, limit);
+            for (int i = 0; i < k; i++) combination[i] = i;
+
+            // each set is counted once: by its k cards with the lowest ids, completed by the highest one
+            while (true) {
+                int max = -1;
+                for (int i = 0; i < k; i++) {
+                    cards[i] = pool[combination[i]];
+                    if (cards[i] > max) max = cards[i];
+                }
+                int last = util.completeSet(cards, k);
+                if (last > max && present[last]) {
+                    for (int i = 0; i < k; i++) found[i] = cards[i];
+                    found[k] = last;
+                    if (++count >= limit) return count;
+                }
+                if (!nextCombination(k, length)) return count;
+            }
+        }
+
+        /**
+         * Counts the sets for tiny feature sizes where a set cannot be completed from its other cards.
+         */
+        private int countSetsByTest(int[] pool, int length, int limit) {
+            int count = 0;
+            for (int i = 0; i < setSize; i++) combination[i] = i;
+            while (true) {
+                for (int i = 0; i < setSize; i++) cards[i] = pool[combination[i]];
+                if (util.testSet(cards)) {
+                    System.arraycopy(cards, 0, found, 0, setSize);
+                    if (++count >= limit) return count;
+                }
+                if (!nextCombination(setSize, length)) return count;
+            }
+        }
+
+        private boolean nextCombination(int k, int n) {
+            int t = k - 1;
+            while (t >= 0 && combination[t] == n - k + t) --t;
+            if (t < 0) return false;
+            combination[t]++;
+            for (int i = t + 1; i < k; i++) combination[i] = combination[i - 1] + 1;
+            return true;
+        }
+
+        private void deals(long count, Accumulator accumulator) {
+            for (long n = 0; n < count; n++) {
+                resetDeck();
+                deal();
+                int sets = countSets(table, tableLength, Integer.MAX_VALUE);
+                accumulator.deals++;
+                if (sets == 0) accumulator.dealsWithoutSet++;
+                accumulator.setsOnTable[Math.min(sets, accumulator.setsOnTable.length - 1)]++;
+            }
+        }
+
+        /**
+         * Plays games in which a set is claimed as soon as there is one, and the table is reshuffled otherwise.
+         */
+        private void games(long count, Accumulator accumulator) {
+            for (long n = 0; n < count; n++) {
+                resetDeck();
+                deal();
+                int reshuffles = 0;
+                boolean dry = false;
+                while (reshuffles < MAX_RESHUFFLES) {
+                    if (!dry && deckLength == 0) {
+                        dry = true;
+                        int left = countSets(table, tableLength, Integer.MAX_VALUE);
+                        accumulator.setsLeftWhenDry[Math.min(left, accumulator.setsLeftWhenDry.length - 1)]++;
+                    }
+                    if (countSets(table, tableLength, 1) > 0) {
+                        removeFound();
+                        deal();
+                    } else if (dry || !remainingHasSet()) {
+                        break;
+                    } else {
+                        ++reshuffles;
+                        returnTableToDeck();
+                        deal();
+                    }
+                }
+                accumulator.games++;
+                if (reshuffles >= MAX_RESHUFFLES) accumulator.stuckGames++;
+                accumulator.reshuffles += reshuffles;
+                accumulator.reshufflesSquared += (long) reshuffles * reshuffles;
+                accumulator.reshufflesPerGame[Math.min(reshuffles, accumulator.reshufflesPerGame.length - 1)]++;
+            }
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        Properties analytics = Config.loadProperties(args.length > 0 ? args[0] : "analytics.properties", logger);
+
+        String[] featureSizes = analytics.getProperty("FeatureSize", "3").split(",");
+        String[] featureCounts = analytics.getProperty("FeatureCount", "4").split(",");
+        String[] boards = analytics.getProperty("Boards", "3x4").split(",");
+        long deals = Long.parseLong(analytics.getProperty("Deals", "1000000"));
+        long games = Long.parseLong(analytics.getProperty("Games", "10000"));
+        int threads = Integer.parseInt(analytics.getProperty("Threads",
+                Integer.toString(Runtime.getRuntime().availableProcessors())));
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            for (String featureSize : featureSizes)
+                for (String featureCount : featureCounts)
+                    for (String board : boards) {
+                        String[] dimensions = board.trim().split("x");
+                        Properties properties = new Properties();
+                        properties.setProperty("LogLevel", "OFF");
+                        properties.setProperty("FeatureSize", featureSize.trim());
+                        properties.setProperty("FeatureCount", featureCount.trim());
+                        properties.setProperty("Rows", dimensions[0]);
+                        properties.setProperty("Columns", dimensions[1]);
+                        properties.setProperty("HumanPlayers", "0");
+                        Config config = new Config(logger, properties);
+                        report(config, run(pool, config, threads, deals, games));
+                    }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static Accumulator run(ExecutorService pool, Config config, int threads, long deals, long games)
+            throws InterruptedException {
+
+        Util util = new UtilImpl(config);
+        int tableSize = Math.min(config.tableSize, config.deckSize);
+        long seed = System.nanoTime();
+        List<Future<Accumulator>> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            final long workerDeals = deals / threads + (i < deals % threads ? 1 : 0);
+            final long workerGames = games / threads + (i < games % threads ? 1 : 0);
+            final long workerSeed = seed + i * 0x9E3779B97F4A7C15L;
+            workers.add(pool.submit(() -> {
+                Accumulator accumulator = new Accumulator(tableSize);
+                Simulation simulation = new Simulation(config, util, tableSize, workerSeed);
+                simulation.deals(workerDeals, accumulator);
+                simulation.games(workerGames, accumulator);
+                return accumulator;
+            }));
+        }
+
+        Accumulator total = new Accumulator(tableSize);
+        for (Future<Accumulator> worker : workers) {
+            try {
+                total.merge(worker.get());
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+        }
+        return total;
+    }
+
+    private static void report(Config config, Accumulator total) {
+        System.out.println(format("=== FeatureSize=%d FeatureCount=%d (deck of %d) Rows=%d Columns=%d ===",
+                config.featureSize, config.featureCount, config.deckSize, config.rows, config.columns));
+
+        double p = total.deals > 0 ? (double) total.dealsWithoutSet / total.deals : 0;
+        double[] wilson = wilson(total.dealsWithoutSet, total.deals);
+        System.out.println(format("P(no set on table) = %.6f  95%% CI [%.6f, %.6f]  (%d deals)",
+                p, wilson[0], wilson[1], total.deals));
+        histogram("sets on a dealt table", total.setsOnTable, total.deals);
+
+        if (total.games > 0) {
+            double mean = (double) total.reshuffles / total.games;
+            double variance = Math.max(0, (double) total.reshufflesSquared / total.games - mean * mean);
+            double error = Z * Math.sqrt(variance / total.games);
+            System.out.println(format("reshuffles per game = %.4f  95%% CI [%.4f, %.4f]  (%d games, %d stuck)",
+                    mean, mean - error, mean + error, total.games, total.stuckGames));
+            histogram("reshuffles per game (last bucket and above)", total.reshufflesPerGame, total.games);
+            histogram("sets left when the deck runs dry", total.setsLeftWhenDry, total.games);
+        }
+        System.out.println();
+    }
+
+    /**
+     * The Wilson score interval of a binomial proportion.
+     */
+    private static double[] wilson(long successes, long trials) {
+        if (trials == 0) return new double[]{0, 1};
+        double p = (double) successes / trials, z2 = Z * Z;
+        double center = (p + z2 / (2 * trials)) / (1 + z2 / trials);
+        double margin = Z * Math.sqrt(p * (1 - p) / trials + z2 / (4.0 * trials * trials)) / (1 + z2 / trials);
+        return new double[]{Math.max(0, center - margin), Math.min(1, center + margin)};
+    }
+
+    private static void histogram(String title, long[] buckets, long total) {
+        System.out.println(title + ":");
+        int last = buckets.length - 1;
+        while (last > 0 && buckets[last] == 0) --last;
+        long max = 1;
+        for (long bucket : buckets) max = Math.max(max, bucket);
+        for (int i = 0; i <= last; i++) {
+            StringBuilder bar = new StringBuilder();
+            for (int j = 0; j < buckets[i] * 50 / max; j++) bar.append('#');
+            System.out.println(format("%4d | %-50s %.4f", i, bar, total > 0 ? (double) buckets[i] / total : 0));
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package bguspl.set;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.ErrorManager;
+import java.util.logging.Formatter;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * A log handler that hands the records to a background writer thread, which publishes them to another handler (e.g.
+ * the log file), so the game threads never wait for the formatting and the disk.
+ * <p>
+ * The records are passed through a bounded ring of preallocated entries that many threads add to and only the writer
+ * takes from. Besides ordinary log records, an entry can hold a message template and its numeric arguments, which the
+ * writer formats: logging such a message allocates nothing on the calling thread. When the ring is full, templated
+ * messages are dropped (and counted), while ordinary records are published by the calling thread.
+ */
+public class AsyncLogHandler extends Handler {
+
+    /**
+     * Formats a message from the arguments of an entry (on the writer thread).
+     */
+    @FunctionalInterface
+    public interface Template {
+        void format(StringBuilder out, Entry entry);
+    }
+
+    /**
+     * An entry of the ring: a log record, or a template with up to 3 numbers and 2 arrays of numbers.
+     */
+    public static final class Entry {
+        private LogRecord record;
+        private Level level;
+        private long millis;
+        private Template template;
+        private long a, b, c;
+        private int[] x = new int[0];
+        private int[] y = new int[0];
+        private int xLength = -1, yLength = -1;
+
+        public long a() {
+            return a;
+        }
+
+        public long b() {
+            return b;
+        }
+
+        public long c() {
+            return c;
+        }
+
+        /**
+         * Appends the first array like Arrays.toString.
+         */
+        public StringBuilder appendX(StringBuilder out) {
+            return append(out, x, xLength);
+        }
+
+        /**
+         * Appends the second array like Arrays.toString.
+         */
+        public StringBuilder appendY(StringBuilder out) {
+            return append(out, y, yLength);
+        }
+
+        /**
+         * @return - the first array (only its first xLength() numbers are arguments).
+         */
+        public int[] x() {
+            return x;
+        }
+
+        public int xLength() {
+            return xLength;
+        }
+
+        private static StringBuilder append(StringBuilder out, int[] array, int length) {
+            if (length < 0) return out.append("null");
+            out.append('[');
+            for (int i = 0; i < length; i++) {
+                if (i > 0) out.append(", ");
+                out.append(array[i]);
+            }
+            return out.append(']');
+        }
+
+        private int[] copy(int[] into, int[] from) {
+            if (from == null) return into;
+            // grows once to the largest array logged, so later copies do not allocate
+            if (into.length < from.length) into = new int[from.length];
+            System.arraycopy(from, 0, into, 0, from.length);
+            return into;
+        }
+
+        private void set(Level level, Template template, long a, long b, long c, int[] x, int[] y) {
+            this.level = level;
+            this.millis = System.currentTimeMillis();
+            this.template = template;
+            this.a = a;
+            this.b = b;
+            this.c = c;
+            this.x = copy(this.x, x);
+            this.xLength = x == null ? -1 : x.length;
+            this.y = copy(this.y, y);
+            this.yLength = y == null ? -1 : y.length;
+        }
+
+        private void clear() {
+            record = null;
+            level = null;
+            template = null;
+        }
+    }
+
+    private final Handler target;
+    private final Entry[] entries;
+    private final int mask;
+
+    /**
+     * The sequence of each entry: equals the position a producer may claim when the entry is free, and the position
+     * plus 1 once it is published (as in a Vyukov bounded queue).
+     */
+    private final AtomicLongArray sequences;
+
+    /**
+     * The next position to claim (by the producers) and to take (by the writer).
+     */
+    private final AtomicLong tail = new AtomicLong();
+    private long head;
+
+    /**
+     * The number of entries the writer has published (read by flush).
+     */
+    private final AtomicLong written = new AtomicLong();
+
+    private final Metrics.Counter dropped = Metrics.registry().counter("set_log_records_dropped_total",
+            "Log messages dropped because the log queue was full.");
+    private long droppedReported;
+
+    private final Thread writer;
+    private volatile boolean sleeping;
+    private volatile boolean closed;
+
+    private final StringBuilder text = new StringBuilder(256);
+
+    /**
+     * The class constructor.
+     *
+     * @param target   - the handler to publish the records to.
+     * @param capacity - the number of records that may wait for the writer (rounded up to a power of 2).
+     */
+    public AsyncLogHandler(Handler target, int capacity) {
+        this.target = target;
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        entries = new Entry[size];
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            entries[i] = new Entry();
+            sequences.set(i, i);
+        }
+        mask = size - 1;
+        setLevel(Level.ALL);
+        writer = new Thread(this::write, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * @return - the handler the records are published to.
+     */
+    public Handler target() {
+        return target;
+    }
+
+    @Override
+    public void setFormatter(Formatter formatter) {
+        target.setFormatter(formatter);
+    }
+
+    @Override
+    public Formatter getFormatter() {
+        return target.getFormatter();
+    }
+
+    /**
+     * Claims a free entry.
+     *
+     * @return - the position of the entry, or -1 if the ring is full.
+     */
+    private long claim() {
+        while (true) {
+            long position = tail.get();
+            long sequence = sequences.get((int) position & mask);
+            if (sequence == position) {
+                if (tail.compareAndSet(position, position + 1)) return position;
+            } else if (sequence < position) {
+                return -1;
+            }
+        }
+    }
+
+    private void release(long position) {
+        sequences.set((int) position & mask, position + 1);
+        if (sleeping) LockSupport.unpark(writer);
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+        if (closed || !isLoggable(record)) return;
+        long position = claim();
+        if (position < 0) {
+            target.publish(record);
+            return;
+        }
+        entries[(int) position & mask].record = record;
+        release(position);
+    }
+
+    /**
+     * Logs a message that is formatted by the writer thread (the caller checks the level).
+     *
+     * @param level    - the level of the message.
+     * @param template - formats the message from the arguments.
+     * @param a        - the first number (or 0).
+     * @param b        - the second number (or 0).
+     * @param c        - the third number (or 0).
+     * @param x        - the first array (or null), copied.
+     * @param y        - the second array (or null), copied.
+     */
+    public void log(Level level, Template template, long a, long b, long c, int[] x, int[] y) {
+        if (closed) return;
+        long position = claim();
+        if (position < 0) {
+            dropped.inc();
+            return;
+        }
+        entries[(int) position & mask].set(level, template, a, b, c, x, y);
+        release(position);
+    }
+
+    /**
+     * Formats a message right away (for loggers that do not publish through an AsyncLogHandler).
+     *
+     * @return - the message.
+     */
+    static String format(Template template, long a, long b, long c, int[] x, int[] y) {
+        Entry entry = new Entry();
+        entry.set(Level.ALL, template, a, b, c, x, y);
+        StringBuilder out = new StringBuilder();
+        template.format(out, entry);
+        return out.toString();
+    }
+
+    /**
+     * The writer thread: publishes the entries in order until the handler is closed and the ring is empty.
+     */
+    private void write() {
+        while (true) {
+            Entry entry = entries[(int) head & mask];
+            if (sequences.get((int) head & mask) != head + 1) {
+                if (closed) break;
+                reportDropped();
+                sleeping = true;
+                // check again after announcing the sleep, so a producer either sees it or its entry is seen here
+                if (sequences.get((int) head & mask) != head + 1) LockSupport.parkNanos(10_000_000L);
+                sleeping = false;
+                continue;
+            }
+            try {
+                target.publish(entry.record != null ? entry.record : format(entry));
+            } catch (RuntimeException e) {
+                reportError(null, e, ErrorManager.WRITE_FAILURE);
+            }
+            entry.clear();
+            sequences.set((int) head & mask, head + entries.length);
+            head++;
+            written.lazySet(head);
+        }
+    }
+
+    private LogRecord format(Entry entry) {
+        text.setLength(0);
+        entry.template.format(text, entry);
+        LogRecord record = new LogRecord(entry.level, text.toString());
+        record.setInstant(Instant.ofEpochMilli(entry.millis));
+        return record;
+    }
+
+    private void reportDropped() {
+        long count = dropped.get();
+        if (count == droppedReported) return;
+        target.publish(new LogRecord(Level.WARNING, "log queue full, dropped " + (count - droppedReported)
+                + " messages."));
+        droppedReported = count;
+    }
+
+    /**
+     * Waits until the writer has published the records logged so far, then flushes the target.
+     */
+    @Override
+    public void flush() {
+        long logged = tail.get();
+        while (written.get() < logged && writer.isAlive()) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(100_000L);
+        }
+        target.flush();
+    }
+
+    /**
+     * Publishes the records logged so far and closes the target.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(5000);
+        } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+        }
+        target.close();
+    }
+}
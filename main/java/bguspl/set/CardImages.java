@@ -0,0 +1,240 @@
+package bguspl.set;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A process wide cache of the card images, shared by all the user interfaces (e.g. of several game rooms).
+ * <p>
+ * Images are decoded (or drawn, see CardRenderer) in parallel on background threads and cached already scaled to the
+ * requested cell size, in a display compatible format, so drawing them is a plain copy. The cache is a bounded LRU: images that were not drawn
+ * for a while are evicted and decoded again when they are needed. Its capacity is the largest one reserved by the open
+ * user interfaces, and shrinks back when they release it.
+ */
+public class CardImages {
+
+    /**
+     * The scaled images by key (see key method), least recently used first (guarded by lock).
+     */
+    private static final LinkedHashMap<String, Image> cache = new LinkedHashMap<String, Image>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Image> eldest) {
+            return size() > capacity;
+        }
+    };
+
+    /**
+     * The callbacks of the images that are being decoded, by key (guarded by lock).
+     */
+    private static final Map<String, List<Runnable>> loading = new HashMap<>();
+
+    private static final Lock lock = new ReentrantLock();
+
+    /**
+     * The capacity of the cache when no user interface reserved one.
+     */
+    private static final int DEFAULT_CAPACITY = 128;
+
+    /**
+     * The capacities reserved by the open user interfaces (guarded by lock).
+     */
+    private static final List<Integer> reserved = new ArrayList<>();
+
+    /**
+     * The maximum number of images in the cache (guarded by lock).
+     */
+    private static int capacity = DEFAULT_CAPACITY;
+
+    private static final AtomicInteger loaderCount = new AtomicInteger();
+    private static final ExecutorService loaders = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), runnable -> {
+                Thread thread = new Thread(runnable, "card-loader-" + loaderCount.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private static String key(String filename, int width, int height) {
+        return filename + '@' + width + 'x' + height;
+    }
+
+    /**
+     * Makes sure the cache can hold at least the given number of images until the capacity is released.
+     *
+     * @param entries - the number of images.
+     */
+    public static void reserve(int entries) {
+        lock.lock();
+        try {
+            reserved.add(entries);
+            updateCapacity();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Releases a capacity reserved by reserve (e.g. when the user interface of a room is disposed), evicting the
+     * least recently used images if the cache shrinks.
+     *
+     * @param entries - the number of images that were reserved.
+     */
+    public static void release(int entries) {
+        lock.lock();
+        try {
+            reserved.remove(Integer.valueOf(entries));
+            updateCapacity();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void updateCapacity() {
+        capacity = DEFAULT_CAPACITY;
+        if (!reserved.isEmpty()) {
+            capacity = 0;
+            for (int entries : reserved) capacity = Math.max(capacity, entries);
+        }
+        for (Iterator<String> it = cache.keySet().iterator(); cache.size() > capacity && it.hasNext(); ) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    /**
+     * Returns an image resource scaled to the given size. If the image is not in the cache, it is decoded in the
+     * background and onLoaded is called (on a loader thread) once it is ready.
+     *
+     * @param logger   - reports the images that cannot be loaded.
+     * @param filename - the resource name of the image.
+     * @param width    - the width to scale the image to.
+     * @param height   - the height to scale the image to.
+     * @param onLoaded - called when the image becomes available (may be null).
+     * @return - the scaled image, or null if it is not ready yet.
+     */
+    public static Image get(Logger logger, String filename, int width, int height, Runnable onLoaded) {
+        return get(logger, key(filename, width, height), () -> scale(decode(logger, filename), width, height),
+                width, height, onLoaded);
+    }
+
+    /**
+     * Returns a rendered card sprite. If the sprite is not in the cache, it is drawn in the background and onLoaded is
+     * called (on a loader thread) once it is ready.
+     *
+     * @param logger   - reports the sprites that cannot be drawn.
+     * @param renderer - the renderer of the deck.
+     * @param card     - the card to draw.
+     * @param width    - the width of the sprite.
+     * @param height   - the height of the sprite.
+     * @param onLoaded - called when the sprite becomes available (may be null).
+     * @return - the sprite, or null if it is not ready yet.
+     */
+    public static Image get(Logger logger, CardRenderer renderer, int card, int width, int height, Runnable onLoaded) {
+        return get(logger, key(renderer.key(card), width, height), () -> renderer.render(card, width, height),
+                width, height, onLoaded);
+    }
+
+    private static Image get(Logger logger, String key, Supplier<Image> producer, int width, int height,
+                             Runnable onLoaded) {
+        lock.lock();
+        try {
+            Image image = cache.get(key);
+            if (image != null) return image;
+            List<Runnable> callbacks = loading.get(key);
+            if (callbacks == null) {
+                callbacks = new ArrayList<>();
+                loading.put(key, callbacks);
+                loaders.execute(() -> load(logger, key, producer, width, height));
+            }
+            if (onLoaded != null) callbacks.add(onLoaded);
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void load(Logger logger, String key, Supplier<Image> producer, int width, int height) {
+        Image image = null;
+        List<Runnable> callbacks = null;
+        try {
+            image = producer.get();
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "warning: cannot load card image " + key + ": " + e, e);
+        } finally {
+            // a failed image is replaced by a placeholder, so it is not requested over and over
+            if (image == null) image = placeholder(width, height);
+            lock.lock();
+            try {
+                cache.put(key, image);
+                callbacks = loading.remove(key);
+            } finally {
+                lock.unlock();
+            }
+        }
+        for (Runnable callback : callbacks) callback.run();
+    }
+
+    private static BufferedImage decode(Logger logger, String filename) {
+        try (InputStream stream = CardImages.class.getClassLoader().getResourceAsStream(filename)) {
+            if (stream != null) {
+                BufferedImage image = ImageIO.read(stream);
+                if (image != null) return image;
+            }
+        } catch (IOException ignored) {
+        }
+        logger.warning("warning: cannot load card image " + filename);
+        return placeholder(1, 1);
+    }
+
+    /**
+     * @return - a plain light gray image, shown instead of an image that cannot be loaded.
+     */
+    private static BufferedImage placeholder(int width, int height) {
+        BufferedImage image = createCompatibleImage(width, height);
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.LIGHT_GRAY);
+        g.fillRect(0, 0, width, height);
+        g.dispose();
+        return image;
+    }
+
+    /**
+     * Creates an image in the format of the screen (or a plain ARGB image when running headless).
+     *
+     * @param width  - the width of the image.
+     * @param height - the height of the image.
+     * @return - the new (transparent) image.
+     */
+    static BufferedImage createCompatibleImage(int width, int height) {
+        if (!GraphicsEnvironment.isHeadless())
+            return GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration()
+                    .createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+        return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    private static Image scale(BufferedImage source, int width, int height) {
+        BufferedImage scaled = createCompatibleImage(width, height);
+        Graphics2D g = scaled.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+        g.drawImage(source, 0, 0, width, height, null);
+        g.dispose();
+        return scaled;
+    }
+}
@@ -0,0 +1,176 @@
+package bguspl.set;
+
+import java.awt.*;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Path2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * Draws a card of any deck from its features, for decks that have no card images.
+ * <p>
+ * The first four features are drawn like the classic cards: the number of symbols, their colour, their shape and
+ * their fill. Every additional feature is drawn as a marker in the bottom band of the card: its position tells the
+ * feature and the number of filled segments tells the value.
+ */
+public class CardRenderer {
+
+    private static final int COUNT = 0;
+    private static final int COLOR = 1;
+    private static final int SHAPE = 2;
+    private static final int FILL = 3;
+
+    private final Config config;
+    private final Util util;
+
+    /**
+     * The colour of each value of the colour feature.
+     */
+    private final Color[] colors;
+
+    public CardRenderer(Config config, Util util) {
+        this.config = config;
+        this.util = util;
+        colors = new Color[config.featureSize];
+        // the classic red, green and purple first, then hues spread evenly around the colour wheel
+        Color[] classic = {new Color(0xE0, 0x20, 0x30), new Color(0x10, 0xA0, 0x40), new Color(0x60, 0x20, 0x90)};
+        for (int i = 0; i < colors.length; ++i)
+            colors[i] = i < classic.length && colors.length <= classic.length ? classic[i]
+                    : Color.getHSBColor((float) i / colors.length, 0.85f, 0.75f);
+    }
+
+    /**
+     * Returns the cache key of a rendered card, unique across decks and cell sizes.
+     *
+     * @param card - the card to render.
+     * @return - the cache key of the card sprite.
+     */
+    public String key(int card) {
+        return "card:" + config.featureSize + '^' + config.featureCount + '#' + card;
+    }
+
+    private int feature(int[] features, int feature) {
+        return feature < features.length ? features[feature] : 0;
+    }
+
+    /**
+     * Draws a card into a new image.
+     *
+     * @param card   - the card to draw.
+     * @param width  - the width of the image.
+     * @param height - the height of the image.
+     * @return - the image of the card.
+     */
+    public Image render(int card, int width, int height) {
+        int[] features = util.cardToFeatures(card);
+        BufferedImage image = CardImages.createCompatibleImage(width, height);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, width, height);
+
+        // leave a band at the bottom for the extra features
+        int extras = Math.max(0, features.length - FILL - 1);
+        int bandHeight = extras > 0 ? Math.max(6, height / 8) : 0;
+        int symbolsHeight = height - bandHeight;
+
+        int count = feature(features, COUNT) + 1;
+        Color color = colors[feature(features, COLOR)];
+        int margin = Math.max(2, Math.min(width, height) / 12);
+        int slotWidth = (width - 2 * margin) / Math.max(3, count);
+        int symbolWidth = slotWidth * 3 / 4;
+        int symbolHeight = symbolsHeight - 2 * margin;
+        int left = (width - slotWidth * count) / 2 + (slotWidth - symbolWidth) / 2;
+        g.setStroke(new BasicStroke(Math.max(1f, symbolWidth / 12f)));
+        for (int i = 0; i < count; ++i) {
+            Shape shape = shape(feature(features, SHAPE), left + i * slotWidth, margin, symbolWidth, symbolHeight);
+            fill(g, shape, color, feature(features, FILL));
+            g.setColor(color);
+            g.draw(shape);
+        }
+
+        for (int i = 0; i < extras; ++i)
+            drawMarker(g, features[FILL + 1 + i], i, extras, width, symbolsHeight, bandHeight);
+
+        g.dispose();
+        return image;
+    }
+
+    /**
+     * The outline of a symbol: an oval, a diamond and a wave for the classic values, regular polygons otherwise.
+     */
+    private Shape shape(int value, int x, int y, int width, int height) {
+        switch (value) {
+            case 0:
+                return new Ellipse2D.Float(x, y, width, height);
+            case 1:
+                Path2D.Float diamond = new Path2D.Float();
+                diamond.moveTo(x + width / 2f, y);
+                diamond.lineTo(x + width, y + height / 2f);
+                diamond.lineTo(x + width / 2f, y + height);
+                diamond.lineTo(x, y + height / 2f);
+                diamond.closePath();
+                return diamond;
+            case 2:
+                Path2D.Float wave = new Path2D.Float();
+                wave.moveTo(x + width * 0.3f, y);
+                wave.curveTo(x + width * 1.1f, y, x + width * 0.4f, y + height * 0.5f, x + width, y + height * 0.85f);
+                wave.curveTo(x + width * 1.1f, y + height * 1.05f, x + width * 0.3f, y + height, x + width * 0.7f, y + height);
+                wave.curveTo(x - width * 0.1f, y + height, x + width * 0.6f, y + height * 0.5f, x, y + height * 0.15f);
+                wave.curveTo(x - width * 0.1f, y - height * 0.05f, x + width * 0.7f, y, x + width * 0.3f, y);
+                wave.closePath();
+                return wave;
+            default:
+                // a triangle, a square, a pentagon and so on
+                int sides = value;
+                Path2D.Float polygon = new Path2D.Float();
+                for (int i = 0; i < sides; ++i) {
+                    double angle = -Math.PI / 2 + 2 * Math.PI * i / sides;
+                    float px = x + width / 2f + (float) Math.cos(angle) * width / 2f;
+                    float py = y + height / 2f + (float) Math.sin(angle) * height / 2f;
+                    if (i == 0) polygon.moveTo(px, py);
+                    else polygon.lineTo(px, py);
+                }
+                polygon.closePath();
+                return polygon;
+        }
+    }
+
+    /**
+     * Fills a symbol: solid for the first value, empty for the last one and stripes of decreasing density in between.
+     */
+    private void fill(Graphics2D g, Shape shape, Color color, int value) {
+        if (value == config.featureSize - 1 && value > 0) return;
+        g.setColor(color);
+        if (value == 0) {
+            g.fill(shape);
+            return;
+        }
+        Rectangle bounds = shape.getBounds();
+        int gap = 2 + value * 2;
+        Shape clip = g.getClip();
+        Stroke stroke = g.getStroke();
+        g.clip(shape);
+        g.setStroke(new BasicStroke(1f));
+        for (int y = bounds.y; y < bounds.y + bounds.height; y += gap)
+            g.drawLine(bounds.x, y, bounds.x + bounds.width, y);
+        g.setClip(clip);
+        g.setStroke(stroke);
+    }
+
+    /**
+     * Draws the value of an extra feature as a row of segments, of which the first value + 1 are filled.
+     */
+    private void drawMarker(Graphics2D g, int value, int index, int extras, int width, int top, int height) {
+        int markerWidth = width / extras;
+        int x = index * markerWidth;
+        int segments = config.featureSize;
+        float segmentWidth = (markerWidth - 4f) / segments;
+        g.setColor(Color.DARK_GRAY);
+        for (int i = 0; i < segments; ++i) {
+            int sx = x + 2 + Math.round(i * segmentWidth);
+            int sw = Math.max(1, Math.round(segmentWidth) - 1);
+            if (i <= value) g.fillRect(sx, top + 1, sw, height - 3);
+            else g.drawRect(sx, top + 1, sw - 1, height - 4);
+        }
+    }
+}
@@ -15,12 +15,27 @@ import java.util.logging.Logger;
  */
 public class Config {
 
+    /**
+     * The minimum level of the messages of each GameLog category (by ordinal)
+     */
+    public final Level[] logLevels;
+
+    /**
+     * The number of log messages that may wait for the log writer thread (0 to log on the calling threads)
+     */
+    public final int logQueueSize;
+
     /**
      * Random spin cycles for Config::randomSpin (for debugging / testing)
      */
     public final long randomSpinMin;
     public final long randomSpinMax;
 
+    /**
+     * Whether to run the player and computer player threads as virtual threads (requires Java 21 or newer)
+     */
+    public final boolean virtualThreads;
+
     /**
      * The number of features on the cards (e.g. shape, color etc.)
      */
@@ -77,15 +92,41 @@ public class Config {
     public final long pointFreezeMillis;
 
     /**
-     * The number of milliseconds to delay before removing/placing a card on the table
+     * The number of milliseconds each card placement/removal is animated for on the screen (the game is not delayed)
      */
     public final long tableDelayMillis;
 
+    /**
+     * Whether the dealer waits for the card animations to be displayed before the players may play on a new table
+     */
+    public final boolean awaitAnimations;
+
+    /**
+     * Whether the dealer reshuffles as soon as the cards on the table contain no set, instead of at the turn timeout
+     */
+    public final boolean adaptiveReshuffle;
+
+    /**
+     * The number of milliseconds the dealer waits before reshuffling a table that has no set (with adaptive reshuffle)
+     */
+    public final long adaptiveReshuffleGraceMillis;
+
+    /**
+     * Whether the dealer reshuffles by swapping a single card of the deck into the table so that it contains a set,
+     * instead of returning all the cards to the deck (a full reshuffle is done if no card of the deck completes a set)
+     */
+    public final boolean minimalReshuffle;
+
     /**
      * The number of milliseconds to pause at the end of the game before closing
      */
     public final long endGamePauseMillies;
 
+    /**
+     * The number of additional games to play back to back after the first one (reusing the threads and the ui)
+     */
+    public final int rematches;
+
     /**
      * The names of the players to display on the screen
      * Note: if there are more players than names, the remaining players will be called "Player 3", "Player 4", etc.
@@ -132,6 +173,64 @@ public class Config {
      */
     public final int fontSize;
 
+    /**
+     * The number of times per second the screen is redrawn (only if anything changed)
+     */
+    public final int frameRate;
+
+    /**
+     * Whether the game engine emits Java Flight Recorder events (recorded by any recording that enables them)
+     */
+    public final boolean jfrEvents;
+
+    /**
+     * The file to write a flight recording of the game to (empty for none)
+     */
+    public final String jfrRecordingFile;
+
+    /**
+     * The port to serve the game metrics on (on localhost, in the Prometheus text format), or 0 for none
+     */
+    public final int metricsPort;
+
+    /**
+     * The time a game loop may make no progress before it is reported with a thread dump (0 to not watch the loops)
+     */
+    public final long watchdogStallMillis;
+
+    /**
+     * The time between the samples of the cpu time and allocations of the game threads logged during a game (0 for
+     * only the report at the end of the game)
+     */
+    public final long threadStatsMillis;
+
+    /**
+     * The number of milliseconds in which repeated presses of a held key by a player are ignored (presses of a key
+     * that was released in between are always accepted)
+     */
+    public final long keyDebounceMillis;
+
+    /**
+     * Whether the table is scaled down to fit the screen (for boards with many rows and columns)
+     */
+    public final boolean bigBoard;
+
+    /**
+     * The user interface to display the game with: Swing, Terminal (ANSI text, for machines without a display) or None
+     */
+    public final String userInterface;
+
+    /**
+     * The maximum number of scaled card images kept in memory (0 = four times the table size plus the empty card)
+     */
+    public final int imageCacheSize;
+
+    /**
+     * Whether the cards are drawn from their features instead of loaded from the card images (always done for decks
+     * that have no images)
+     */
+    public final boolean proceduralCards;
+
     /**
      * The scancodes of the keyboard input data for each player
      * Notes:
@@ -155,7 +254,7 @@ public class Config {
      * @param filename - the name of the configuration file.
      * @return - a properties object with the configuration file contents.
      */
-    private static Properties loadProperties(String filename, Logger logger) {
+    static Properties loadProperties(String filename, Logger logger) {
 
         Properties properties = new Properties();
 
@@ -181,11 +280,38 @@ public class Config {
     }
 
     public Config(Logger logger, Properties properties) {
+        this(logger, properties, true);
+    }
+
+    /**
+     * @param configureLogger - true iff the level, format and rotation of the logger are set from the properties
+     *                        (false for a logger that logs through handlers configured elsewhere).
+     */
+    public Config(Logger logger, Properties properties, boolean configureLogger) {
 
         // logger settings
         Level logLevel = Level.parse(properties.getProperty("LogLevel", "ALL"));
         String logFormat = properties.getProperty("LogFormat", "[%1$tT.%1$tL] [%2$-7s] %3$s%n");
-        Main.setLoggerLevelAndFormat(logger, logLevel, logFormat);
+        logQueueSize = Integer.parseInt(properties.getProperty("LogQueueSize", "8192"));
+        if (configureLogger) {
+            Main.setLoggerLevelAndFormat(logger, logLevel, logFormat, logQueueSize);
+            Main.setLoggerRotation(logger,
+                    (long) (Double.parseDouble(properties.getProperty("LogFileMaxMegabytes", "16")) * 1024 * 1024),
+                    (long) (Double.parseDouble(properties.getProperty("LogRotateSeconds", "0")) * 1000.0),
+                    (long) (Double.parseDouble(properties.getProperty("LogDirectoryMaxMegabytes", "256")) * 1024 * 1024));
+        }
+        logLevels = new Level[GameLog.Category.values().length];
+        Arrays.fill(logLevels, Level.ALL);
+        for (String categoryLevel : properties.getProperty("LogLevels", "").split(",")) {
+            if (categoryLevel.isBlank()) continue;
+            String[] parts = categoryLevel.split(":");
+            try {
+                logLevels[GameLog.Category.valueOf(parts[0].trim().toUpperCase()).ordinal()] =
+                        Level.parse(parts[1].trim().toUpperCase());
+            } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+                logger.warning("warning: ignoring illegal log level " + categoryLevel.trim());
+            }
+        }
 
         // for debugging
         randomSpinMin = Long.parseLong(properties.getProperty("RandomSpinMin", "0"));
@@ -193,6 +319,9 @@ public class Config {
         if (randomSpinMax < randomSpinMin || randomSpinMin < 0)
             logger.severe("invalid random spin cycles: max: " + randomSpinMax + " min: " + randomSpinMin);
 
+        // threading settings
+        virtualThreads = Boolean.parseBoolean(properties.getProperty("VirtualThreads", "False"));
+
         // cards settings
         featureSize = Integer.parseInt(properties.getProperty("FeatureSize", "3"));
         featureCount = Integer.parseInt(properties.getProperty("FeatureCount", "4"));
@@ -209,7 +338,12 @@ public class Config {
         pointFreezeMillis = (long) (Double.parseDouble(properties.getProperty("PointFreezeSeconds", "1")) * 1000.0);
         penaltyFreezeMillis = (long) (Double.parseDouble(properties.getProperty("PenaltyFreezeSeconds", "3")) * 1000.0);
         tableDelayMillis = (long) (Double.parseDouble(properties.getProperty("TableDelaySeconds", "0.1")) * 1000.0);
+        awaitAnimations = Boolean.parseBoolean(properties.getProperty("AwaitAnimations", "False"));
+        adaptiveReshuffle = Boolean.parseBoolean(properties.getProperty("AdaptiveReshuffle", "False"));
+        minimalReshuffle = Boolean.parseBoolean(properties.getProperty("MinimalReshuffle", "False"));
+        adaptiveReshuffleGraceMillis = (long) (Double.parseDouble(properties.getProperty("AdaptiveReshuffleGraceSeconds", "0")) * 1000.0);
         endGamePauseMillies = (long) (Double.parseDouble(properties.getProperty("EndGamePauseSeconds", "5")) * 1000.0);
+        rematches = Integer.parseInt(properties.getProperty("Rematches", "0"));
 
         // ui settings
         String[] names = properties.getProperty("PlayerNames", "Player 1, Player 2").split(",");
@@ -224,6 +358,18 @@ public class Config {
         playerCellWidth = Integer.parseInt(properties.getProperty("PlayerCellWidth", "300"));
         playerCellHeight = Integer.parseInt(properties.getProperty("PlayerCellHeight", "40"));
         fontSize = Integer.parseInt(properties.getProperty("FontSize", "40"));
+        frameRate = Integer.parseInt(properties.getProperty("FrameRate", "30"));
+        jfrRecordingFile = properties.getProperty("JfrRecordingFile", "").trim();
+        metricsPort = Integer.parseInt(properties.getProperty("MetricsPort", "0"));
+        threadStatsMillis = (long) (Double.parseDouble(properties.getProperty("ThreadStatsSeconds", "0")) * 1000.0);
+        watchdogStallMillis = (long) (Double.parseDouble(properties.getProperty("WatchdogStallSeconds", "5")) * 1000.0);
+        jfrEvents = Boolean.parseBoolean(properties.getProperty("JfrEvents", "False")) || !jfrRecordingFile.isEmpty();
+        bigBoard = Boolean.parseBoolean(properties.getProperty("BigBoard", "False"));
+        keyDebounceMillis = (long) (Double.parseDouble(properties.getProperty("KeyDebounceSeconds", "0.15")) * 1000.0);
+        userInterface = properties.getProperty("UserInterface", "Swing").trim().toLowerCase();
+        int imageCacheSize = Integer.parseInt(properties.getProperty("ImageCacheSize", "0"));
+        this.imageCacheSize = imageCacheSize > 0 ? imageCacheSize : 4 * tableSize + 1;
+        proceduralCards = Boolean.parseBoolean(properties.getProperty("ProceduralCards", "False"));
 
         // keyboard input data
         playerKeys = new int[players][rows * columns];
@@ -233,7 +379,8 @@ public class Config {
             String playerKeysString = properties.getProperty("PlayerKeys" + (i + 1), defaultCodes);
             if (playerKeysString.length() > 0) {
                 String[] codes = playerKeysString.split(",");
-                if (codes.length != tableSize)
+                // fewer keys than slots are fine as long as a slot can be selected with two key presses
+                if (codes.length > tableSize || codes.length * codes.length < tableSize)
                     logger.severe("warning: player " + (i + 1) + " keys (" + codes.length + ") mismatch table size (" + tableSize + ").");
                 for (int j = 0; j < Math.min(codes.length, tableSize); ++j) // parse the key codes string
                     playerKeys[i][j] = Integer.parseInt(codes[j]);
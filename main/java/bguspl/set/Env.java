@@ -1,5 +1,6 @@
 package bguspl.set;
 
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Logger;
 
 public class Env {
@@ -8,11 +9,18 @@ public class Env {
     public final Config config;
     public final UserInterface ui;
     public final Util util;
+    public final ThreadFactory threadFactory;
 
     public Env(Logger logger, Config config, UserInterface ui, Util util) {
+        this(logger, config, ui, util, GameThreads.factory(config, logger));
+    }
+
+    public Env(Logger logger, Config config, UserInterface ui, Util util, ThreadFactory threadFactory) {
         this.logger = logger;
         this.config = config;
         this.ui = ui;
         this.util = util;
+        this.threadFactory = threadFactory;
+        if (config.jfrEvents) GameEvents.register();
     }
 }
@@ -0,0 +1,149 @@
+package bguspl.set;
+
+import jdk.jfr.Category;
+import jdk.jfr.Configuration;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.Registered;
+import jdk.jfr.StackTrace;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.logging.Logger;
+
+/**
+ * Java Flight Recorder events of the game engine.
+ * <p>
+ * The events are only registered when JfrEvents is set in the configuration. Until then committing them does nothing,
+ * so the hot paths create and commit them unconditionally.
+ */
+public class GameEvents {
+
+    private static final String CATEGORY = "SET Game";
+
+    private static final Class<?>[] EVENTS = {
+            TimerLoop.class, CheckSet.class, PlaceCards.class, Reshuffle.class, TableChange.class, FindSets.class
+    };
+
+    private static boolean registered;
+
+    /**
+     * Registers the game events with the flight recorder, so they are recorded by any recording that enables them.
+     */
+    @SuppressWarnings("unchecked")
+    public static synchronized void register() {
+        if (registered) return;
+        for (Class<?> event : EVENTS)
+            FlightRecorder.register((Class<? extends Event>) event);
+        registered = true;
+    }
+
+    /**
+     * Starts a recording of the default JDK events and the game events, which is written to a file when stopped.
+     *
+     * @param file   - the file to write the recording to.
+     * @param logger - the logger to report errors to.
+     * @return - the recording, or null if it could not be started.
+     */
+    public static Recording startRecording(String file, Logger logger) {
+        register();
+        try {
+            Recording recording = new Recording(Configuration.getConfiguration("default"));
+            for (Class<?> event : EVENTS)
+                recording.enable(event.getName()).withoutThreshold();
+            recording.setDestination(Path.of(file));
+            recording.setToDisk(true);
+            recording.start();
+            logger.info("flight recording to " + file + " started.");
+            return recording;
+        } catch (IOException | ParseException | IllegalStateException | SecurityException e) {
+            logger.severe("cannot start flight recording: " + e);
+            return null;
+        }
+    }
+
+    @Name("bguspl.set.TimerLoop")
+    @Label("Dealer Timer Loop")
+    @Description("An iteration of the dealer's timer loop (after waiting for claims)")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    @Registered(false)
+    public static class TimerLoop extends Event {
+        @Label("Claim Checked")
+        public boolean claimChecked;
+    }
+
+    @Name("bguspl.set.CheckSet")
+    @Label("Check Set")
+    @Description("The dealer checking a player's claim")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    @Registered(false)
+    public static class CheckSet extends Event {
+        @Label("Player")
+        public int player;
+
+        @Label("Verdict")
+        @Description("1 for a point, -1 for a penalty, 0 if the claim could not be checked")
+        public int verdict;
+    }
+
+    @Name("bguspl.set.PlaceCards")
+    @Label("Place Cards On Table")
+    @Description("The dealer filling the empty slots of the table")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    @Registered(false)
+    public static class PlaceCards extends Event {
+        @Label("Cards")
+        public int cards;
+    }
+
+    @Name("bguspl.set.Reshuffle")
+    @Label("Reshuffle")
+    @Description("The dealer changing the cards on the table because the turn timed out or the table has no set")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    @Registered(false)
+    public static class Reshuffle extends Event {
+        @Label("Minimal")
+        @Description("True iff a single card was swapped instead of returning all the cards to the deck")
+        public boolean minimal;
+    }
+
+    @Name("bguspl.set.TableChange")
+    @Label("Table Change")
+    @Description("Cards placed on or removed from the table, including the user interface update")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    @Registered(false)
+    public static class TableChange extends Event {
+        @Label("Operation")
+        public String operation;
+
+        @Label("Cards")
+        public int cards;
+    }
+
+    @Name("bguspl.set.FindSets")
+    @Label("Find Sets")
+    @Description("A search for legal sets in a list of cards")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    @Registered(false)
+    public static class FindSets extends Event {
+        @Label("Input Size")
+        public int inputSize;
+
+        @Label("Limit")
+        public int limit;
+
+        @Label("Results")
+        public int results;
+    }
+}
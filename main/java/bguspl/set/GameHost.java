@@ -0,0 +1,175 @@
+package bguspl.set;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Handler;
+import java.util.logging.Logger;
+
+/**
+ * Hosts many concurrent games (rooms) in a single process.
+ * <p>
+ * All the rooms share one logger pipeline (each room logs through a child logger of the host logger), one thread
+ * factory for the player threads, a bounded pool of dealer threads (rooms opened beyond its size wait for a free
+ * dealer before their players are started) and one timer service that enforces the maximum game duration.
+ * <p>
+ * Usage: {@code GameHost [rooms]} runs the given number of computer-only rooms with the config.properties settings.
+ */
+public class GameHost implements AutoCloseable {
+
+    private final Logger logger;
+    private final Properties defaults;
+
+    /**
+     * The configuration parsed from the defaults (shared by the rooms opened without overrides).
+     */
+    public final Config config;
+
+    private final ThreadFactory threadFactory;
+    private final long maxGameMillis;
+
+    /**
+     * The dealer threads (one per concurrently running room).
+     */
+    private final ExecutorService dealers;
+
+    /**
+     * The timer service of all rooms.
+     */
+    private final ScheduledExecutorService timer;
+
+    private final Map<Integer, GameRoom> rooms = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+
+    /**
+     * The class constructor.
+     *
+     * @param logger        - the logger all rooms log through.
+     * @param defaults      - the configuration properties of every room (may be overridden per room).
+     * @param maxRooms      - the maximum number of rooms running at the same time.
+     * @param maxGameMillis - the duration after which a room is terminated (0 for no limit).
+     */
+    public GameHost(Logger logger, Properties defaults, int maxRooms, long maxGameMillis) {
+        this.logger = logger;
+        this.defaults = new Properties();
+        this.defaults.putAll(defaults);
+        this.defaults.setProperty("HumanPlayers", "0");
+        this.maxGameMillis = maxGameMillis;
+        config = new Config(logger, this.defaults);
+        threadFactory = GameThreads.factory(config, logger);
+
+        AtomicInteger dealerCount = new AtomicInteger();
+        dealers = Executors.newFixedThreadPool(maxRooms, runnable -> {
+            Thread thread = new Thread(runnable, "dealer-" + dealerCount.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "room-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Opens a new computer-only room and queues it for a dealer thread.
+     *
+     * @param overrides - configuration properties overriding the host defaults for this room.
+     * @return - the new room.
+     */
+    public GameRoom open(Properties overrides) {
+        int id = nextId.getAndIncrement();
+        Logger roomLogger = Logger.getLogger(logger.getName() + ".room-" + id);
+        Config roomConfig = config;
+        if (!overrides.isEmpty()) {
+            Properties properties = new Properties();
+            properties.putAll(defaults);
+            properties.putAll(overrides);
+            properties.setProperty("HumanPlayers", "0");
+            // the room logs through the host's handlers, which were configured by the host
+            roomConfig = new Config(roomLogger, properties, false);
+        }
+        GameRoom room = new GameRoom(id, roomLogger, roomConfig, players -> null, threadFactory);
+        rooms.put(id, room);
+
+        dealers.execute(() -> {
+            ScheduledFuture<?> deadline = maxGameMillis > 0
+                    ? timer.schedule(room::terminate, maxGameMillis, TimeUnit.MILLISECONDS) : null;
+            try {
+                room.run();
+            } finally {
+                if (deadline != null) deadline.cancel(false);
+                rooms.remove(id);
+            }
+        });
+        return room;
+    }
+
+    /**
+     * Terminates a room and waits until its threads have stopped.
+     *
+     * @param room - the room to close.
+     * @throws InterruptedException - if the calling thread was interrupted while waiting.
+     */
+    public void close(GameRoom room) throws InterruptedException {
+        room.terminate();
+        if (!room.awaitEnd(Long.MAX_VALUE)) logger.severe("room " + room.id + " did not end");
+    }
+
+    /**
+     * @return - the rooms that are currently open (running or waiting for a dealer thread).
+     */
+    public Collection<GameRoom> rooms() {
+        return rooms.values();
+    }
+
+    /**
+     * Terminates all the rooms and shuts down the shared thread pools. If the calling thread is interrupted while
+     * waiting for the rooms to end, the pools are shut down without waiting and the interrupt flag is restored.
+     */
+    @Override
+    public void close() {
+        dealers.shutdown();
+        for (GameRoom room : new ArrayList<>(rooms.values())) room.terminate();
+        try {
+            dealers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            timer.shutdownNow();
+        }
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+
+        Logger logger = Main.initLogger();
+        Properties defaults = Config.loadProperties("config.properties", logger);
+        List<GameRoom> opened = new ArrayList<>();
+        MetricsServer metricsServer = null;
+        try (GameHost host = new GameHost(logger, defaults, count, 0)) {
+            int metricsPort = host.config.metricsPort;
+            if (metricsPort > 0) metricsServer = MetricsServer.start(metricsPort, Metrics.registry(), logger);
+            for (int i = 0; i < count; i++) opened.add(host.open(new Properties()));
+            for (GameRoom room : opened) {
+                room.awaitEnd(Long.MAX_VALUE);
+                StringBuilder scores = new StringBuilder("room " + room.id + " ended, scores:");
+                for (int i = 0; i < room.players.length; i++) scores.append(' ').append(room.players[i].score());
+                System.out.println(scores);
+            }
+        } finally {
+            if (metricsServer != null) metricsServer.close();
+            for (Handler h : logger.getHandlers()) h.flush();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package bguspl.set;
+
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Logs the frequent messages of the game (user interface updates and key presses) by category, checking the levels
+ * before anything is built.
+ * <p>
+ * When the logger publishes through an AsyncLogHandler, the message is formatted from its template by the log writer
+ * thread, so logging allocates nothing on the calling thread. Otherwise, the message is formatted and logged right
+ * away.
+ */
+public class GameLog {
+
+    /**
+     * The categories of messages, whose levels are set by the LogLevels configuration property.
+     */
+    public enum Category {
+        /** Cards placed on and removed from the table. */
+        CARDS,
+        /** Tokens placed on and removed from the table. */
+        TOKENS,
+        /** Countdown and elapsed time updates. */
+        TIMER,
+        /** Scores, freezes and winners. */
+        PLAYERS,
+        /** Key presses. */
+        INPUT,
+        /** Resets and other game events. */
+        GAME
+    }
+
+    private final Logger logger;
+    private final Level[] levels;
+    private final AsyncLogHandler async;
+
+    /**
+     * @param logger - the logger to log to.
+     * @param config - the configuration with the level of each category.
+     */
+    public GameLog(Logger logger, Config config) {
+        this.logger = logger;
+        this.levels = config.logLevels;
+        this.async = findAsyncHandler(logger);
+    }
+
+    private static AsyncLogHandler findAsyncHandler(Logger logger) {
+        for (Logger current = logger; current != null; current = current.getParent()) {
+            for (Handler handler : current.getHandlers())
+                if (handler instanceof AsyncLogHandler) return (AsyncLogHandler) handler;
+            if (!current.getUseParentHandlers()) break;
+        }
+        return null;
+    }
+
+    /**
+     * @return - true iff messages of the category at the level are logged.
+     */
+    public boolean isLoggable(Category category, Level level) {
+        return level.intValue() >= levels[category.ordinal()].intValue() && logger.isLoggable(level);
+    }
+
+    public void log(Category category, Level level, AsyncLogHandler.Template template, long a) {
+        log(category, level, template, a, 0, 0, null, null);
+    }
+
+    public void log(Category category, Level level, AsyncLogHandler.Template template, long a, long b) {
+        log(category, level, template, a, b, 0, null, null);
+    }
+
+    public void log(Category category, Level level, AsyncLogHandler.Template template, int[] x, int[] y) {
+        log(category, level, template, 0, 0, 0, x, y);
+    }
+
+    /**
+     * Logs a message if its category and level are enabled.
+     *
+     * @param category - the category of the message.
+     * @param level    - the level of the message.
+     * @param template - formats the message from the arguments.
+     * @param a        - the first number (or 0).
+     * @param b        - the second number (or 0).
+     * @param c        - the third number (or 0).
+     * @param x        - the first array (or null).
+     * @param y        - the second array (or null).
+     */
+    public void log(Category category, Level level, AsyncLogHandler.Template template, long a, long b, long c,
+                    int[] x, int[] y) {
+        if (!isLoggable(category, level)) return;
+        if (async != null) {
+            async.log(level, template, a, b, c, x, y);
+        } else {
+            logger.log(level, AsyncLogHandler.format(template, a, b, c, x, y));
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package bguspl.set;
+
+import bguspl.set.ex.Dealer;
+import bguspl.set.ex.Player;
+import bguspl.set.ex.Table;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+/**
+ * A single game with its own environment, table, dealer and players. Running the room runs the dealer (and the
+ * configured number of rematches, reusing the threads and the ui) and stops the player threads once the last winners
+ * are announced, so several rooms can be hosted in the same process.
+ */
+public class GameRoom implements Runnable {
+
+    /**
+     * The id of the room (starting from 0).
+     */
+    public final int id;
+
+    /**
+     * The game environment object.
+     */
+    public final Env env;
+
+    /**
+     * Game entities.
+     */
+    public final Table table;
+    public final Dealer dealer;
+    public final Player[] players;
+
+    /**
+     * Released when the game has ended and all the player threads have stopped.
+     */
+    private final CountDownLatch ended = new CountDownLatch(1);
+
+    /**
+     * Released when the room is terminated due to an external event.
+     */
+    private final CountDownLatch terminated = new CountDownLatch(1);
+
+    /**
+     * The class constructor.
+     *
+     * @param id            - the id of the room.
+     * @param logger        - the logger of the room.
+     * @param config        - the configuration of the game.
+     * @param uiFactory     - creates the user interface for the players array (may return null for no interface).
+     * @param threadFactory - the factory of the player and computer player threads.
+     */
+    public GameRoom(int id, Logger logger, Config config, Function<Player[], UserInterface> uiFactory,
+                    ThreadFactory threadFactory) {
+        this.id = id;
+        Util util = new UtilImpl(config);
+        players = new Player[config.players];
+        UserInterface ui = new UserInterfaceDecorator(logger, config, util, uiFactory.apply(players));
+        env = new Env(logger, config, ui, util, threadFactory);
+        table = new Table(env);
+        dealer = new Dealer(env, table, players);
+        for (int i = 0; i < players.length; i++)
+            players[i] = new Player(env, dealer, table, i, i < config.humanPlayers);
+    }
+
+    /**
+     * Runs the game (on the calling thread) until it ends or is terminated.
+     */
+    @Override
+    public void run() {
+        try {
+            dealer.run();
+            for (int game = 0; game < env.config.rematches; game++) {
+                // show the winners for a while before starting the rematch
+                if (terminated.await(env.config.endGamePauseMillies, TimeUnit.MILLISECONDS)) break;
+                long startTime = System.currentTimeMillis();
+                dealer.reset();
+                if (terminated.getCount() == 0) break;
+                env.logger.info("rematch " + (game + 1) + " ready after " + (System.currentTimeMillis() - startTime) + " ms.");
+                dealer.run();
+            }
+            dealer.terminate();
+        } catch (InterruptedException ignored) {
+            dealer.terminate();
+        } finally {
+            ended.countDown();
+        }
+    }
+
+    /**
+     * Called when the game should be terminated due to an external event.
+     */
+    public void terminate() {
+        terminated.countDown();
+        dealer.terminate();
+    }
+
+    /**
+     * Waits for the game to end.
+     *
+     * @param millis - the maximum time to wait.
+     * @return - true iff the game has ended.
+     * @throws InterruptedException - if the calling thread was interrupted while waiting.
+     */
+    public boolean awaitEnd(long millis) throws InterruptedException {
+        return ended.await(millis, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,40 @@
+package bguspl.set;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Logger;
+
+/**
+ * Creates the threads of the game entities, either as platform threads or as virtual threads.
+ */
+public class GameThreads {
+
+    /**
+     * Creates the thread factory for the player and computer player threads according to the configuration.
+     *
+     * @param config - the game configuration.
+     * @param logger - the logger to report a missing virtual threads support to.
+     * @return - a virtual thread factory if config.virtualThreads is set and supported, a platform one otherwise.
+     */
+    public static ThreadFactory factory(Config config, Logger logger) {
+        if (config.virtualThreads) {
+            ThreadFactory virtual = virtualThreadFactory();
+            if (virtual != null) return virtual;
+            logger.severe("virtual threads are not supported by this JVM (Java 21 or newer is required). Using platform threads.");
+        }
+        return Thread::new;
+    }
+
+    /**
+     * Looks up Thread.ofVirtual().factory() reflectively, so the game still builds and runs on older JVMs.
+     *
+     * @return - the virtual thread factory, or null if virtual threads are not available.
+     */
+    static ThreadFactory virtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+}
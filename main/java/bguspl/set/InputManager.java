@@ -1,34 +1,81 @@
 package bguspl.set;
 
+import bguspl.set.GameLog.Category;
 import bguspl.set.ex.Player;
 
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.util.Arrays;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * This class handles the input from the keyboard, translates it to table grid slots and dispatches accordingly.
+ * <p>
+ * A player with fewer keys than the table has slots selects a slot with two key presses: the first key selects a
+ * group of slots and the second key selects the slot in the group.
  */
 class InputManager extends KeyAdapter {
 
     private static final int MAX_KEY_CODE = 255;
+
+    /**
+     * The time the second key press of a two-step selection may come after the first one.
+     */
+    private static final long SELECTION_TIMEOUT_MILLIS = 2000;
+
     private final Player[] players;
     int[] keyMap = new int[MAX_KEY_CODE + 1];
     int[] keyToSlot = new int[MAX_KEY_CODE + 1];
-    private final Logger logger;
+    private final GameLog log;
+    private final int tableSize;
+    private final int humanPlayers;
+
+    /**
+     * The last accepted key of each player (its index and time, or -1 once the key was released), to drop the
+     * auto-repeats of a held key.
+     */
+    private final int[] lastKey;
+    private final long[] lastWhen;
+    private final long debounceMillis;
+
+    /**
+     * The number of keys of each player, and the group of slots selected by the first key of a two-step selection
+     * (-1 if none) and when it was selected.
+     */
+    private final int[] keyCount;
+    private final int[] selectedGroup;
+    private final long[] selectedWhen;
+
+    private static final AsyncLogHandler.Template GROUP_SELECTED = (out, args) ->
+            out.append("player ").append(args.a() + 1).append(" selected slot group ").append(args.b());
+    private static final AsyncLogHandler.Template SLOT_SELECTED = (out, args) ->
+            out.append("slot ").append(args.b()).append(" was selected by player ").append(args.a() + 1)
+                    .append(args.c() != 0 ? "" : " (dropped)");
 
     public InputManager(Logger logger, Config config, Player[] players) {
         this.players = players;
-        this.logger = logger;
+        this.log = new GameLog(logger, config);
+        this.tableSize = config.tableSize;
+        this.humanPlayers = config.humanPlayers;
+        this.debounceMillis = config.keyDebounceMillis;
+        lastKey = new int[config.players];
+        Arrays.fill(lastKey, -1);
+        lastWhen = new long[config.players];
+        keyCount = new int[config.players];
+        selectedGroup = new int[config.players];
+        Arrays.fill(selectedGroup, -1);
+        selectedWhen = new long[config.players];
 
         // initialize the keys
         for (int player = 0; player < config.players; ++player)
             for (int i = 0; i < config.playerKeys(player).length; i++) {
                 int keyCode = config.playerKeys(player)[i];
+                if (keyCode == 0) break; // no more keys for this player
                 if (keyCode >= keyMap.length) reallocArrays(keyCode); // enlarge the array for higher key codes
                 keyMap[keyCode] = player + 1; // 1 for first player and 2 for second player
                 keyToSlot[keyCode] = i;
+                keyCount[player] = i + 1;
             }
     }
 
@@ -41,10 +88,53 @@ class InputManager extends KeyAdapter {
     public void keyPressed(KeyEvent e) {
         // dispatch the key event to the player according to the key map
         int keyCode = e.getKeyCode();
-        int player = keyMap[keyCode] - 1;
+        int player = keyCode < keyMap.length ? keyMap[keyCode] - 1 : -1;
         if (player >= 0){
-            logger.severe("key " + keyCode + " was pressed by player " + (player + 1));
-            players[player].keyPressed(keyToSlot[keyCode]);
+            int key = keyToSlot[keyCode];
+            long when = e.getWhen();
+            // a held key repeats without being released, so drop such presses that come too soon after the last one
+            // (a quick double tap, e.g. to select the slot g of group g, is released in between and is kept)
+            if (key == lastKey[player] && when - lastWhen[player] < debounceMillis) return;
+            lastKey[player] = key;
+            lastWhen[player] = when;
+
+            int slot = key;
+            if (keyCount[player] < tableSize) {
+                if (selectedGroup[player] < 0 || when - selectedWhen[player] > SELECTION_TIMEOUT_MILLIS) {
+                    selectedGroup[player] = key;
+                    selectedWhen[player] = when;
+                    log.log(Category.INPUT, Level.FINE, GROUP_SELECTED, player, key);
+                    return;
+                }
+                slot = selectedGroup[player] * keyCount[player] + key;
+                selectedGroup[player] = -1;
+                if (slot >= tableSize) return;
+            }
+            dispatch(player, slot, when);
         }
     }
+
+    @Override
+    public void keyReleased(KeyEvent e) {
+        int keyCode = e.getKeyCode();
+        int player = keyCode < keyMap.length ? keyMap[keyCode] - 1 : -1;
+        if (player >= 0 && keyToSlot[keyCode] == lastKey[player]) lastKey[player] = -1;
+    }
+
+    /**
+     * Called when a slot is clicked with the mouse, which plays for the first human player.
+     *
+     * @param slot - the slot that was clicked.
+     * @param when - the time of the click (in milliseconds, as in MouseEvent.getWhen).
+     */
+    void slotClicked(int slot, long when) {
+        if (humanPlayers == 0 || slot < 0 || slot >= tableSize) return;
+        selectedGroup[0] = -1;
+        dispatch(0, slot, when);
+    }
+
+    private void dispatch(int player, int slot, long when) {
+        boolean queued = players[player].enqueueKey(slot, when);
+        log.log(Category.INPUT, Level.FINE, SLOT_SELECTED, player, slot, queued ? 1 : 0, null, null);
+    }
 }
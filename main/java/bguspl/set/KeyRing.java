@@ -0,0 +1,79 @@
+package bguspl.set;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded lock-free queue of key presses from a single producer (the input thread) to a single consumer (the player
+ * thread). Each entry keeps the slot of the key and the time the key was pressed.
+ */
+public class KeyRing {
+
+    private final int[] slots;
+    private final long[] whens;
+    private final int mask;
+
+    /**
+     * The index of the next entry to read (written by the consumer only).
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * The index of the next entry to write (written by the producer only).
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * @param capacity - the maximum number of pending key presses (rounded up to a power of 2).
+     */
+    public KeyRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        slots = new int[size];
+        whens = new long[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Adds a key press (called by the producer only).
+     *
+     * @param slot - the slot of the key.
+     * @param when - the time the key was pressed (in milliseconds, as in KeyEvent.getWhen).
+     * @return - false iff the queue is full and the key press was dropped.
+     */
+    public boolean offer(int slot, long when) {
+        long t = tail.get();
+        if (t - head.get() > mask) return false;
+        slots[(int) t & mask] = slot;
+        whens[(int) t & mask] = when;
+        // a full volatile write, so a consumer that is about to wait either sees the entry or is seen waiting
+        tail.set(t + 1);
+        return true;
+    }
+
+    /**
+     * @return - true iff there are no pending key presses.
+     */
+    public boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+
+    /**
+     * @return - the slot of the oldest pending key press (the queue must not be empty).
+     */
+    public int peekSlot() {
+        return slots[(int) head.get() & mask];
+    }
+
+    /**
+     * @return - the time of the oldest pending key press (the queue must not be empty).
+     */
+    public long peekWhen() {
+        return whens[(int) head.get() & mask];
+    }
+
+    /**
+     * Removes the oldest pending key press (called by the consumer only, the queue must not be empty).
+     */
+    public void remove() {
+        head.lazySet(head.get() + 1);
+    }
+}
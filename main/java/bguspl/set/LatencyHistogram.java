@@ -0,0 +1,125 @@
+package bguspl.set;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of durations with logarithmic buckets: each power of 2 is split into 16 buckets, so any value
+ * is recorded with an error of at most 1/16 (like a HdrHistogram with one significant digit).
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong max = new AtomicLong();
+
+    private static int bucket(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @return - the highest value that falls in the bucket.
+     */
+    private static long bucketLimit(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return ((SUB_BUCKETS + sub) << (exponent - SUB_BUCKET_BITS)) + width - 1;
+    }
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos - the duration in nanoseconds (negative durations are recorded as 0).
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(bucket(value));
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * Removes all the recorded durations (durations recorded meanwhile may or may not be removed).
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++)
+            counts.set(i, 0);
+        max.set(0);
+    }
+
+    /**
+     * @return - a copy of the recorded durations.
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++)
+            copy[i] = counts.get(i);
+        return new Snapshot(copy, max.get());
+    }
+
+    /**
+     * The durations recorded in a histogram at some point in time.
+     */
+    public static class Snapshot {
+
+        private final long[] counts;
+        private final long count;
+        private final long max;
+
+        private Snapshot(long[] counts, long max) {
+            this.counts = counts;
+            long count = 0;
+            for (long bucketCount : counts)
+                count += bucketCount;
+            this.count = count;
+            this.max = max;
+        }
+
+        /**
+         * @return - the number of recorded durations.
+         */
+        public long count() {
+            return count;
+        }
+
+        /**
+         * @return - the longest recorded duration in nanoseconds.
+         */
+        public long max() {
+            return max;
+        }
+
+        /**
+         * Returns the duration that the given fraction of the recorded durations do not exceed.
+         *
+         * @param fraction - the fraction (e.g. 0.99 for the 99th percentile).
+         * @return - the duration in nanoseconds (up to 1/16 above the exact value), or 0 if nothing was recorded.
+         */
+        public long percentile(double fraction) {
+            if (count == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(fraction * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return Math.min(bucketLimit(i), max);
+            }
+            return max;
+        }
+
+        /**
+         * @return - the count, median, 99th and 99.9th percentiles and maximum in milliseconds, as text.
+         */
+        @Override
+        public String toString() {
+            return String.format("n=%d p50=%.3fms p99=%.3fms p999=%.3fms max=%.3fms", count,
+                    percentile(0.5) / 1e6, percentile(0.99) / 1e6, percentile(0.999) / 1e6, max / 1e6);
+        }
+    }
+}
@@ -1,23 +1,22 @@
 package bguspl.set;
 
-import bguspl.set.ex.Dealer;
 import bguspl.set.ex.Player;
-import bguspl.set.ex.Table;
+import jdk.jfr.Recording;
 
-import java.io.File;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Calendar;
-import java.util.Date;
 import java.util.logging.*;
+import java.util.regex.Pattern;
 
 /**
  * This class contains the game's main function.
  */
 public class Main {
 
-    private static Dealer dealer;
+    private static GameRoom room;
     private static Thread mainThread;
 
     private static boolean xButtonPressed = false;
@@ -26,7 +25,7 @@ public class Main {
     public static void xButtonPressed() throws InterruptedException {
         if (logger != null) logger.severe("exit button pressed");
         xButtonPressed = true;
-        if (dealer != null) dealer.terminate();
+        if (room != null) room.terminate();
         mainThread.join();
     }
 
@@ -43,30 +42,18 @@ public class Main {
         logger = initLogger();
         ThreadLogger.logStart(logger, Thread.currentThread().getName());
         Config config = new Config(logger, "config.properties");
-        Util util = new UtilImpl(config);
-
-        Player[] players = new Player[config.players];
-        UserInterface ui = null;
-        try {
-            ui = new UserInterfaceSwing(logger, config, players);
-        } catch (UnsupportedOperationException | IllegalArgumentException e) {
-            logger.severe("error creating swing user interface: " + e.getMessage());
-            logger.severe("will try to run without user interface");
-            if (config.humanPlayers > 0)
-                logger.severe("warning: running with human players with no user interface");
-        }
-        ui = new UserInterfaceDecorator(logger, util, ui);
-
-        Env env = new Env(logger, config, ui, util);
+        Recording recording = config.jfrRecordingFile.isEmpty() ? null
+                : GameEvents.startRecording(config.jfrRecordingFile, logger);
+        MetricsServer metricsServer = config.metricsPort > 0
+                ? MetricsServer.start(config.metricsPort, Metrics.registry(), logger) : null;
 
         // create the game entities
-        Table table = new Table(env);
-        dealer = new Dealer(env, table, players);
-        for (int i = 0; i < players.length; i++)
-            players[i] = new Player(env, dealer, table, i, i < env.config.humanPlayers);
+        room = new GameRoom(0, logger, config, players -> createUserInterface(config, players),
+                GameThreads.factory(config, logger));
+        Env env = room.env;
 
         // start the dealer thread
-        ThreadLogger dealerThread = new ThreadLogger(dealer, "dealer", logger);
+        ThreadLogger dealerThread = new ThreadLogger(room, "dealer", logger);
         dealerThread.startWithLog();
 
         try {
@@ -75,23 +62,61 @@ public class Main {
             if (!xButtonPressed && config.endGamePauseMillies > 0) Thread.sleep(config.endGamePauseMillies);
         } catch (InterruptedException ignored) {
         } finally {
+            if (!xButtonPressed) env.ui.dispose();
+            if (metricsServer != null) metricsServer.close();
+            if (recording != null) {
+                recording.stop();
+                recording.close();
+            }
             logger.severe("thanks for playing... it was fun!");
             System.out.println("Thanks for playing... it was fun!");
             ThreadLogger.logStop(logger, Thread.currentThread().getName());
-            if (!xButtonPressed) env.ui.dispose();
             for (Handler h : logger.getHandlers()) h.flush();
         }
     }
 
-    private static Logger initLogger() {
+    private static UserInterface createUserInterface(Config config, Player[] players) {
+        UserInterface ui;
+        switch (config.userInterface) {
+            case "none":
+                ui = null;
+                break;
+            case "terminal":
+                ui = new UserInterfaceTerminal(logger, config);
+                break;
+            default:
+                try {
+                    ui = new UserInterfaceSwing(logger, config, players);
+                } catch (UnsupportedOperationException | IllegalArgumentException e) {
+                    logger.severe("error creating swing user interface: " + e.getMessage());
+                    logger.severe("will try to run with a terminal user interface");
+                    ui = new UserInterfaceTerminal(logger, config);
+                }
+        }
+        if (ui == null) {
+            if (config.humanPlayers > 0)
+                logger.severe("warning: running with human players with no user interface");
+            System.out.println("running without a user interface. Check logs.");
+            return null;
+        }
+        return config.tableDelayMillis > 0 ? new UserInterfaceAnimator(logger, config, ui) : ui;
+    }
+
+    /**
+     * Matches the names of the log files of the game: the file of a run (named by its start time) and its rotated
+     * segments, compressed or not.
+     */
+    static final Pattern LOG_FILE_NAMES =
+            Pattern.compile("\\d{1,2}-\\d{1,2}_\\d{2}-\\d{2}-\\d{2}(\\.\\d+)?\\.log(\\.gz)?");
+
+    static Logger initLogger() {
 
         //just to make our log file nicer :)
         SimpleDateFormat format = new SimpleDateFormat("M-d_HH-mm-ss");
-        FileHandler handler;
+        Handler handler;
         try {
-            //noinspection ResultOfMethodCallIgnored
-            new File("./logs/").mkdirs();
-            handler = new FileHandler("./logs/" + format.format(Calendar.getInstance().getTime()) + ".log");
+            handler = new RotatingLogHandler(Path.of("logs"), format.format(Calendar.getInstance().getTime()),
+                    LOG_FILE_NAMES);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
@@ -99,22 +124,50 @@ public class Main {
         java.util.logging.Logger logger = java.util.logging.Logger.getLogger("SetGameLogger");
         logger.setUseParentHandlers(false);
         logger.addHandler(handler);
-        setLoggerLevelAndFormat(logger, Level.ALL, "[%1$tT.%1$tL] [%2$-7s] %3$s%n");
+        setLoggerLevelAndFormat(logger, Level.ALL, "[%1$tT.%1$tL] [%2$-7s] %3$s%n", 0);
 
         return logger;
     }
 
-    public static void setLoggerLevelAndFormat(Logger logger, Level level, String format) {
+    /**
+     * Sets when the log files of the logger are rotated and how much disk they may use.
+     *
+     * @param maxFileBytes  - the size at which a new log file is started (0 for no limit).
+     * @param rotateMillis  - the age at which a new log file is started (0 for no limit).
+     * @param maxTotalBytes - the total size of the log files in the log directory above which the oldest ones are
+     *                      deleted (0 for no limit).
+     */
+    public static void setLoggerRotation(Logger logger, long maxFileBytes, long rotateMillis, long maxTotalBytes) {
+        for (Handler h : logger.getHandlers()) {
+            if (h instanceof AsyncLogHandler) h = ((AsyncLogHandler) h).target();
+            if (h instanceof RotatingLogHandler)
+                ((RotatingLogHandler) h).setLimits(maxFileBytes, rotateMillis, maxTotalBytes);
+        }
+    }
+
+    /**
+     * Sets the level of the logger and the format of its handlers.
+     *
+     * @param queueSize - if positive, the handlers are wrapped so records are written by a background thread, with
+     *                  room for this many records.
+     */
+    public static void setLoggerLevelAndFormat(Logger logger, Level level, String format, int queueSize) {
         Handler[] handlers = logger.getHandlers();
-        if (handlers != null) Arrays.stream(handlers).forEach(h -> h.setFormatter(new SimpleFormatter() {
-            // default format (with timestamp)  = "[%1$tF %1$tT] [%2$-7s] %3$s%n";
-            @Override
-            public synchronized String format(LogRecord lr) {
-                return String.format(format, new Date(lr.getMillis()),
-                        lr.getLevel().getLocalizedName(), lr.getMessage()
-                );
+        if (handlers != null) Arrays.stream(handlers).forEach(h -> {
+            if (queueSize > 0 && !(h instanceof AsyncLogHandler)) {
+                logger.removeHandler(h);
+                h = new AsyncLogHandler(h, queueSize);
+                logger.addHandler(h);
             }
-        }));
+            h.setFormatter(new SimpleFormatter() {
+                // default format (with timestamp)  = "[%1$tF %1$tT] [%2$-7s] %3$s%n";
+                // (only called by one thread at a time: the handlers publish under their own lock)
+                @Override
+                public String format(LogRecord lr) {
+                    return String.format(format, lr.getMillis(), lr.getLevel().getLocalizedName(), lr.getMessage());
+                }
+            });
+        });
         logger.setLevel(level);
     }
 }
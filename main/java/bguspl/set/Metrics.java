@@ -0,0 +1,209 @@
+package bguspl.set;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The process-wide registry of the game metrics, written in the Prometheus text format.
+ * <p>
+ * Counters and gauges are striped (LongAdder), so the game threads update them without contending with each other,
+ * and a scrape only sums them. The series of all the rooms of the process are added up (e.g. the sets on all the
+ * tables), and players are labelled by their id.
+ */
+public class Metrics {
+
+    private static final Metrics registry = new Metrics();
+
+    /**
+     * @return - the metrics of the process.
+     */
+    public static Metrics registry() {
+        return registry;
+    }
+
+    /**
+     * A value that only grows.
+     */
+    public static class Counter {
+        private final LongAdder value = new LongAdder();
+
+        public void inc() {
+            value.increment();
+        }
+
+        public void add(long amount) {
+            value.add(amount);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    /**
+     * A value that goes up and down (updated by deltas, so several threads and rooms may share it).
+     */
+    public static class Gauge {
+        private final LongAdder value = new LongAdder();
+
+        public void inc() {
+            value.increment();
+        }
+
+        public void dec() {
+            value.decrement();
+        }
+
+        public void add(long delta) {
+            value.add(delta);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    private static class Family {
+        final String name;
+        final String help;
+        final String type;
+        final List<Series> series = new ArrayList<>();
+
+        Family(String name, String help, String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    private static class Series {
+        final String labels;
+        final Object metric;
+
+        Series(String labels, Object metric) {
+            this.labels = labels;
+            this.metric = metric;
+        }
+    }
+
+    /**
+     * The metric families in registration order (guarded by this).
+     */
+    private final List<Family> families = new ArrayList<>();
+
+    /**
+     * The registered metrics by name and labels, so each component gets the same instance for the same series.
+     */
+    private final Map<String, Object> metrics = new ConcurrentHashMap<>();
+
+    /**
+     * The names of the game threads whose cpu time is exported, by thread id.
+     */
+    private final Map<Long, String> threads = new ConcurrentHashMap<>();
+
+    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private final com.sun.management.ThreadMXBean allocationBean =
+            threadBean instanceof com.sun.management.ThreadMXBean
+                    && ((com.sun.management.ThreadMXBean) threadBean).isThreadAllocatedMemorySupported()
+                    ? (com.sun.management.ThreadMXBean) threadBean : null;
+
+    /**
+     * @param name  - the name of the metric (ending with _total).
+     * @param help  - the description of the metric.
+     * @param label - the label of the series (e.g. "player"), or null for none.
+     * @param value - the value of the label.
+     * @return - the counter of the series.
+     */
+    public Counter counter(String name, String help, String label, String value) {
+        return (Counter) register(name, help, "counter", label, value, new Counter());
+    }
+
+    public Counter counter(String name, String help) {
+        return counter(name, help, null, null);
+    }
+
+    /**
+     * @param name  - the name of the metric.
+     * @param help  - the description of the metric.
+     * @param label - the label of the series, or null for none.
+     * @param value - the value of the label.
+     * @return - the gauge of the series.
+     */
+    public Gauge gauge(String name, String help, String label, String value) {
+        return (Gauge) register(name, help, "gauge", label, value, new Gauge());
+    }
+
+    public Gauge gauge(String name, String help) {
+        return gauge(name, help, null, null);
+    }
+
+    private synchronized Object register(String name, String help, String type, String label, String value,
+                                         Object metric) {
+        String labels = label == null ? "" : "{" + label + "=\"" + value + "\"}";
+        Object registered = metrics.get(name + labels);
+        if (registered != null) return registered;
+        Family family = null;
+        for (Family existing : families)
+            if (existing.name.equals(name)) family = existing;
+        if (family == null) {
+            family = new Family(name, help, type);
+            families.add(family);
+        }
+        family.series.add(new Series(labels, metric));
+        metrics.put(name + labels, metric);
+        return metric;
+    }
+
+    /**
+     * Exports the cpu time of the calling thread (until it terminates).
+     */
+    public void registerCurrentThread() {
+        Thread thread = Thread.currentThread();
+        threads.put(thread.getId(), thread.getName());
+    }
+
+    /**
+     * Writes all the metrics in the Prometheus text format.
+     *
+     * @param out - the text to append the metrics to.
+     */
+    public synchronized void write(StringBuilder out) {
+        for (Family family : families) {
+            out.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+            for (Series series : family.series) {
+                long value = series.metric instanceof Counter
+                        ? ((Counter) series.metric).get() : ((Gauge) series.metric).get();
+                out.append(family.name).append(series.labels).append(' ').append(value).append('\n');
+            }
+        }
+        if (allocationBean != null) {
+            out.append("# HELP set_thread_allocated_bytes_total The memory allocated by a game thread.\n");
+            out.append("# TYPE set_thread_allocated_bytes_total counter\n");
+            for (Map.Entry<Long, String> thread : threads.entrySet()) {
+                long bytes = allocationBean.getThreadAllocatedBytes(thread.getKey());
+                if (bytes >= 0)
+                    out.append("set_thread_allocated_bytes_total{thread=\"").append(thread.getValue())
+                            .append("\",id=\"").append(thread.getKey()).append("\"} ").append(bytes).append('\n');
+            }
+        }
+        if (!threadBean.isThreadCpuTimeSupported()) return;
+        out.append("# HELP set_thread_cpu_seconds_total The cpu time used by a game thread.\n");
+        out.append("# TYPE set_thread_cpu_seconds_total counter\n");
+        for (Map.Entry<Long, String> thread : threads.entrySet()) {
+            long nanos = threadBean.getThreadCpuTime(thread.getKey());
+            if (nanos < 0) {
+                // the thread has terminated
+                threads.remove(thread.getKey());
+                continue;
+            }
+            out.append("set_thread_cpu_seconds_total{thread=\"").append(thread.getValue()).append("\",id=\"")
+                    .append(thread.getKey()).append("\"} ").append(nanos / 1e9).append('\n');
+        }
+    }
+}
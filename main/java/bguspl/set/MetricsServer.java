@@ -0,0 +1,86 @@
+package bguspl.set;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+
+/**
+ * Serves the metrics of the process in the Prometheus text format at http://localhost:port/metrics.
+ * <p>
+ * The server only listens on the loopback address and handles the scrapes on a single daemon thread.
+ */
+public class MetricsServer implements AutoCloseable {
+
+    private final HttpServer server;
+
+    private MetricsServer(HttpServer server) {
+        this.server = server;
+    }
+
+    /**
+     * Starts serving the metrics.
+     *
+     * @param port    - the port to listen on.
+     * @param metrics - the metrics to serve.
+     * @param logger  - the logger to report errors to.
+     * @return - the server, or null if it could not be started.
+     */
+    public static MetricsServer start(int port, Metrics metrics, Logger logger) {
+        try {
+            HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+            server.createContext("/metrics", exchange -> scrape(exchange, metrics));
+            server.setExecutor(Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "metrics-server");
+                thread.setDaemon(true);
+                return thread;
+            }));
+            server.start();
+            logger.info("serving metrics at http://localhost:" + server.getAddress().getPort() + "/metrics");
+            return new MetricsServer(server);
+        } catch (IOException e) {
+            logger.severe("cannot serve metrics on port " + port + ": " + e);
+            return null;
+        }
+    }
+
+    private static void scrape(HttpExchange exchange, Metrics metrics) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            StringBuilder text = new StringBuilder(4096);
+            metrics.write(text);
+            byte[] body = text.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    /**
+     * @return - the port the server listens on.
+     */
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops serving the metrics.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        ((ExecutorService) server.getExecutor()).shutdownNow();
+    }
+}
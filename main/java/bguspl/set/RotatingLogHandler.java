@@ -0,0 +1,263 @@
+package bguspl.set;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.SimpleFormatter;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A log handler that writes to a file in a log directory through a buffered file channel, and starts a new file when
+ * the current one reaches a size or an age.
+ * <p>
+ * The full files (segments) are renamed to name.1.log, name.2.log etc. and gzip-compressed by a background thread,
+ * which then deletes the oldest log files of the directory (including those left by earlier runs) while their total
+ * size is over a limit. Only the files whose names match the log file pattern are counted and deleted, and the current
+ * file and the segments waiting to be compressed are never deleted. Flushing only writes the current file, without
+ * waiting for the compression.
+ */
+public class RotatingLogHandler extends Handler {
+
+    private final Path directory;
+    private final String name;
+    private final Path file;
+
+    /**
+     * Matches the names of the log files in the directory that count toward the size limit.
+     */
+    private final Pattern logFiles;
+
+    /**
+     * The segments handed to the compressor that were not compressed yet (never deleted by the retention).
+     */
+    private final Set<Path> pending = ConcurrentHashMap.newKeySet();
+
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+
+    private FileChannel channel;
+    private long size;
+    private long openedAt;
+    private int segments;
+
+    private volatile long maxFileBytes;
+    private volatile long rotateMillis;
+    private volatile long maxTotalBytes;
+
+    /**
+     * Compresses the segments and applies the retention limit (one at a time).
+     */
+    private final ExecutorService compressor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "log-compressor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The class constructor, for a handler whose size limit only covers its own files.
+     *
+     * @param directory - the directory of the log files (created if missing).
+     * @param name      - the name of the log file (without the .log extension).
+     * @throws IOException - if the log file cannot be created.
+     */
+    public RotatingLogHandler(Path directory, String name) throws IOException {
+        this(directory, name, Pattern.compile(Pattern.quote(name) + "(\\.\\d+)?\\.log(\\.gz)?"));
+    }
+
+    /**
+     * The class constructor.
+     *
+     * @param directory - the directory of the log files (created if missing).
+     * @param name      - the name of the log file (without the .log extension).
+     * @param logFiles  - matches the names of the log files in the directory that count toward the size limit (e.g.
+     *                  those of earlier runs); it should match the names of this handler's files as well.
+     * @throws IOException - if the log file cannot be created.
+     */
+    public RotatingLogHandler(Path directory, String name, Pattern logFiles) throws IOException {
+        this.directory = directory;
+        this.name = name;
+        this.file = directory.resolve(name + ".log");
+        this.logFiles = logFiles;
+        Files.createDirectories(directory);
+        setFormatter(new SimpleFormatter());
+        open();
+    }
+
+    /**
+     * Sets when a new file is started and how much disk the log files of the directory may use.
+     *
+     * @param maxFileBytes  - the size at which a new file is started (0 for no limit).
+     * @param rotateMillis  - the age at which a new file is started (0 for no limit).
+     * @param maxTotalBytes - the total size of the log files of the directory above which the oldest ones are deleted
+     *                      (0 for no limit; the current file is never deleted).
+     */
+    public void setLimits(long maxFileBytes, long rotateMillis, long maxTotalBytes) {
+        this.maxFileBytes = maxFileBytes;
+        this.rotateMillis = rotateMillis;
+        this.maxTotalBytes = maxTotalBytes;
+        // earlier runs may have left the directory over the limit
+        if (maxTotalBytes > 0) compressor.execute(this::applyRetention);
+    }
+
+    private void open() throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        size = 0;
+        openedAt = System.currentTimeMillis();
+    }
+
+    @Override
+    public synchronized void publish(LogRecord record) {
+        if (channel == null || !isLoggable(record)) return;
+        byte[] bytes;
+        try {
+            bytes = getFormatter().format(record).getBytes(StandardCharsets.UTF_8);
+        } catch (RuntimeException e) {
+            reportError(null, e, ErrorManager.FORMAT_FAILURE);
+            return;
+        }
+        try {
+            if (size > 0 && (maxFileBytes > 0 && size + bytes.length > maxFileBytes
+                    || rotateMillis > 0 && record.getMillis() - openedAt >= rotateMillis))
+                rotate();
+            for (int offset = 0; offset < bytes.length; ) {
+                if (!buffer.hasRemaining()) writeBuffer();
+                int length = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, length);
+                offset += length;
+            }
+            size += bytes.length;
+        } catch (IOException e) {
+            reportError(null, e, ErrorManager.WRITE_FAILURE);
+        }
+    }
+
+    private void writeBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * Renames the current file to the next segment, hands it to the compressor and starts a new file.
+     */
+    private void rotate() throws IOException {
+        writeBuffer();
+        channel.close();
+        Path segment;
+        do {
+            segment = directory.resolve(name + "." + ++segments + ".log");
+        } while (Files.exists(segment) || Files.exists(gzipped(segment)));
+        Files.move(file, segment);
+        Path full = segment;
+        pending.add(full);
+        compressor.execute(() -> {
+            compress(full);
+            pending.remove(full);
+            applyRetention();
+        });
+        open();
+    }
+
+    private static Path gzipped(Path segment) {
+        return segment.resolveSibling(segment.getFileName() + ".gz");
+    }
+
+    /**
+     * Replaces a segment by its gzip-compressed copy (the segment is kept if the compression fails or is cut short).
+     */
+    private void compress(Path segment) {
+        Path gz = gzipped(segment);
+        Path partial = gz.resolveSibling(gz.getFileName() + ".part");
+        try {
+            try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(partial), 64 * 1024)) {
+                Files.copy(segment, out);
+            }
+            Files.move(partial, gz, StandardCopyOption.ATOMIC_MOVE);
+            Files.delete(segment);
+        } catch (IOException e) {
+            reportError("cannot compress " + segment, e, ErrorManager.GENERIC_FAILURE);
+            try {
+                Files.deleteIfExists(partial);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Deletes the oldest log files of the directory (other than the current file and the segments waiting to be
+     * compressed) while their total size is over the size limit.
+     */
+    private void applyRetention() {
+        long limit = maxTotalBytes;
+        if (limit <= 0) return;
+        List<Path> files = new ArrayList<>();
+        long total = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                if (!Files.isRegularFile(path) || !logFiles.matcher(path.getFileName().toString()).matches())
+                    continue;
+                total += Files.size(path);
+                if (!path.equals(file) && !pending.contains(path)) files.add(path);
+            }
+            files.sort(Comparator.comparing(path -> {
+                try {
+                    return Files.getLastModifiedTime(path);
+                } catch (IOException e) {
+                    return null;
+                }
+            }, Comparator.nullsFirst(Comparator.naturalOrder())));
+            for (Path oldest : files) {
+                if (total <= limit) break;
+                long bytes = Files.size(oldest);
+                if (Files.deleteIfExists(oldest)) total -= bytes;
+            }
+        } catch (IOException e) {
+            reportError("cannot apply the log retention limit", e, ErrorManager.GENERIC_FAILURE);
+        }
+    }
+
+    /**
+     * Writes the buffered records to the current file (without waiting for segments being compressed).
+     */
+    @Override
+    public synchronized void flush() {
+        if (channel == null) return;
+        try {
+            writeBuffer();
+        } catch (IOException e) {
+            reportError(null, e, ErrorManager.FLUSH_FAILURE);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (channel == null) return;
+        flush();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            reportError(null, e, ErrorManager.CLOSE_FAILURE);
+        }
+        channel = null;
+        compressor.shutdown();
+    }
+}
@@ -0,0 +1,207 @@
+package bguspl.set;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * Runs a single headless game between computer players and collects its statistics.
+ */
+public class SelfPlay {
+
+    /**
+     * The statistics of a single self-play game.
+     */
+    public static class Result {
+
+        /**
+         * True iff the game ended by itself (i.e. it was not stopped due to the time limit).
+         */
+        public final boolean completed;
+
+        /**
+         * The number of milliseconds from the dealer start until the winners were announced.
+         */
+        public final long durationMillis;
+
+        /**
+         * The number of milliseconds in which the cards on the table did not contain a legal set.
+         */
+        public final long deadMillis;
+
+        /**
+         * The number of legal sets claimed by all players.
+         */
+        public final int sets;
+
+        /**
+         * The number of times the dealer reshuffled the table (fully or by swapping a single card).
+         */
+        public final int reshuffles;
+
+        private Result(boolean completed, long durationMillis, long deadMillis, int sets, int reshuffles) {
+            this.completed = completed;
+            this.durationMillis = durationMillis;
+            this.deadMillis = deadMillis;
+            this.sets = sets;
+            this.reshuffles = reshuffles;
+        }
+
+        public double setsPerMinute() {
+            return durationMillis > 0 ? sets * 60000.0 / durationMillis : 0;
+        }
+
+        public double deadFraction() {
+            return durationMillis > 0 ? (double) deadMillis / durationMillis : 0;
+        }
+    }
+
+    /**
+     * Plays a single game with computer players only.
+     *
+     * @param properties - the game configuration (human players are ignored).
+     * @param maxMillis  - the maximum duration of the game before it is terminated.
+     * @return - the statistics of the game.
+     * @throws InterruptedException - if the calling thread was interrupted while waiting for the game.
+     */
+    public static Result play(Properties properties, long maxMillis) throws InterruptedException {
+
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+
+        Properties gameProperties = new Properties();
+        gameProperties.putAll(properties);
+        gameProperties.setProperty("HumanPlayers", "0");
+        Config config = new Config(logger, gameProperties);
+        Monitor monitor = new Monitor(config, new UtilImpl(config));
+        GameRoom room = new GameRoom(0, logger, config, players -> monitor, GameThreads.factory(config, logger));
+
+        Thread dealerThread = new Thread(room, "dealer");
+        monitor.start();
+        dealerThread.start();
+        boolean completed = room.awaitEnd(maxMillis);
+        if (!completed) room.terminate();
+        dealerThread.join();
+        return monitor.result(completed, room.dealer.getReshuffles());
+    }
+
+    /**
+     * A user interface that tracks the table contents and the scores instead of displaying them.
+     */
+    private static class Monitor implements UserInterface {
+
+        private final Util util;
+        private final int[] slotToCard;
+        private final int[] scores;
+        private long startTime;
+        private long endTime;
+        private long deadSince = -1;
+        private long deadMillis;
+
+        private Monitor(Config config, Util util) {
+            this.util = util;
+            slotToCard = new int[config.tableSize];
+            Arrays.fill(slotToCard, -1);
+            scores = new int[config.players];
+        }
+
+        private synchronized void start() {
+            startTime = System.currentTimeMillis();
+            deadSince = startTime;
+        }
+
+        private synchronized Result result(boolean completed, int reshuffles) {
+            long now = endTime > 0 ? endTime : System.currentTimeMillis();
+            long dead = deadMillis + (deadSince >= 0 ? now - deadSince : 0);
+            return new Result(completed, now - startTime, dead, Arrays.stream(scores).sum(), reshuffles);
+        }
+
+        private void tableChanged() {
+            List<Integer> cards = new ArrayList<>(slotToCard.length);
+            for (int card : slotToCard)
+                if (card >= 0) cards.add(card);
+            boolean dead = util.findSets(cards, 1).isEmpty();
+            long now = System.currentTimeMillis();
+            if (dead && deadSince < 0) deadSince = now;
+            else if (!dead && deadSince >= 0) {
+                deadMillis += now - deadSince;
+                deadSince = -1;
+            }
+        }
+
+        @Override
+        public synchronized void placeCard(int card, int slot) {
+            slotToCard[slot] = card;
+            tableChanged();
+        }
+
+        @Override
+        public synchronized void removeCard(int slot) {
+            slotToCard[slot] = -1;
+            tableChanged();
+        }
+
+        @Override
+        public synchronized void placeCards(int[] cards, int[] slots) {
+            for (int i = 0; i < slots.length; i++)
+                slotToCard[slots[i]] = cards[i];
+            tableChanged();
+        }
+
+        @Override
+        public synchronized void removeCards(int[] slots) {
+            for (int slot : slots)
+                slotToCard[slot] = -1;
+            tableChanged();
+        }
+
+        @Override
+        public void placeToken(int player, int slot) {}
+
+        @Override
+        public void removeTokens() {}
+
+        @Override
+        public void removeTokens(int slot) {}
+
+        @Override
+        public void removeToken(int player, int slot) {}
+
+        @Override
+        public void setCountdown(long millies, boolean warn) {}
+
+        @Override
+        public void setElapsed(long millies) {}
+
+        @Override
+        public void setFreeze(int player, long millies) {}
+
+        @Override
+        public synchronized void setScore(int player, int score) {
+            scores[player] = score;
+        }
+
+        @Override
+        public synchronized void announceWinner(int[] players) {
+            endTime = System.currentTimeMillis();
+            if (deadSince >= 0) {
+                deadMillis += endTime - deadSince;
+                deadSince = -1;
+            }
+        }
+
+        @Override
+        public void awaitAnimations() {}
+
+        @Override
+        public synchronized void reset() {
+            Arrays.fill(slotToCard, -1);
+            Arrays.fill(scores, 0);
+        }
+
+        @Override
+        public void dispose() {}
+    }
+}
@@ -0,0 +1,170 @@
+package bguspl.set;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+/**
+ * Measures the cpu time and the allocated bytes of the threads of a game (the dealer, the players, the computer
+ * players and the Swing event dispatch thread) through com.sun.management.ThreadMXBean, per game and per interval.
+ * <p>
+ * The methods are called by the dealer (and the threads register themselves), so sampling needs no thread of its own.
+ */
+public class ThreadSampler {
+
+    private final Logger logger;
+    private final long intervalMillis;
+    private final com.sun.management.ThreadMXBean threadBean;
+    private final boolean cpuSupported;
+    private final boolean allocationSupported;
+
+    /**
+     * The sampled threads and their cpu time and allocated bytes at the start of the game and at the last sample
+     * (-1 if unknown).
+     */
+    private Thread[] threads = new Thread[0];
+    private long[] ids = new long[0];
+    private long[] startCpu = new long[0];
+    private long[] startAllocated = new long[0];
+    private long[] lastCpu = new long[0];
+    private long[] lastAllocated = new long[0];
+
+    private long startTime;
+    private long lastSampleTime;
+
+    /**
+     * The class constructor.
+     *
+     * @param logger         - the logger to report to.
+     * @param intervalMillis - the time between the samples logged during the game (0 for none).
+     */
+    public ThreadSampler(Logger logger, long intervalMillis) {
+        this.logger = logger;
+        this.intervalMillis = intervalMillis;
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        threadBean = bean instanceof com.sun.management.ThreadMXBean ? (com.sun.management.ThreadMXBean) bean : null;
+        cpuSupported = threadBean != null && threadBean.isThreadCpuTimeSupported()
+                && threadBean.isThreadCpuTimeEnabled();
+        allocationSupported = threadBean != null && threadBean.isThreadAllocatedMemorySupported()
+                && threadBean.isThreadAllocatedMemoryEnabled();
+    }
+
+    /**
+     * @return - true iff the cpu time or the allocated bytes of threads can be measured.
+     */
+    public boolean isSupported() {
+        return cpuSupported || allocationSupported;
+    }
+
+    /**
+     * Samples the calling thread from now on (once per thread).
+     */
+    public synchronized void addCurrentThread() {
+        add(Thread.currentThread());
+    }
+
+    private void add(Thread thread) {
+        if (!isSupported()) return;
+        for (Thread sampled : threads)
+            if (sampled == thread) return;
+        int count = threads.length;
+        threads = Arrays.copyOf(threads, count + 1);
+        ids = Arrays.copyOf(ids, count + 1);
+        startCpu = Arrays.copyOf(startCpu, count + 1);
+        startAllocated = Arrays.copyOf(startAllocated, count + 1);
+        lastCpu = Arrays.copyOf(lastCpu, count + 1);
+        lastAllocated = Arrays.copyOf(lastAllocated, count + 1);
+        threads[count] = thread;
+        ids[count] = thread.getId();
+        startCpu[count] = lastCpu[count] = cpu(ids[count]);
+        startAllocated[count] = lastAllocated[count] = allocated(ids[count]);
+    }
+
+    private long cpu(long id) {
+        return cpuSupported ? threadBean.getThreadCpuTime(id) : -1;
+    }
+
+    private long allocated(long id) {
+        return allocationSupported ? threadBean.getThreadAllocatedBytes(id) : -1;
+    }
+
+    /**
+     * Starts measuring a new game (also samples the event dispatch threads, if any).
+     */
+    public synchronized void start() {
+        if (!isSupported()) return;
+        for (ThreadInfo info : threadBean.getThreadInfo(threadBean.getAllThreadIds()))
+            if (info != null && info.getThreadName().startsWith("AWT-EventQueue"))
+                for (Thread thread : Thread.getAllStackTraces().keySet())
+                    if (thread.getId() == info.getThreadId()) add(thread);
+        startTime = lastSampleTime = System.currentTimeMillis();
+        for (int i = 0; i < threads.length; i++) {
+            startCpu[i] = lastCpu[i] = cpu(ids[i]);
+            startAllocated[i] = lastAllocated[i] = allocated(ids[i]);
+        }
+    }
+
+    /**
+     * Logs the cpu usage and allocation rate of each thread since the last sample, if the interval has passed.
+     */
+    public synchronized void sample() {
+        if (intervalMillis <= 0 || !isSupported()) return;
+        long now = System.currentTimeMillis();
+        long elapsed = now - lastSampleTime;
+        if (elapsed < intervalMillis) return;
+        StringBuilder sample = new StringBuilder("thread usage in the last ").append(elapsed).append(" ms:");
+        for (int i = 0; i < threads.length; i++) {
+            long cpu = cpu(ids[i]);
+            long allocated = allocated(ids[i]);
+            if (cpu < 0 && allocated < 0) continue;
+            appendUsage(sample.append(' ').append(threads[i].getName()).append(" ["), cpu, lastCpu[i], allocated,
+                    lastAllocated[i], elapsed).append(']');
+            lastCpu[i] = cpu;
+            lastAllocated[i] = allocated;
+        }
+        lastSampleTime = now;
+        logger.fine(sample.toString());
+    }
+
+    /**
+     * @return - the cpu time and the allocated bytes of each thread in the game so far, in total and per second.
+     */
+    public synchronized String report() {
+        if (!isSupported()) return "thread usage: not supported by this jvm.";
+        long elapsed = Math.max(1, System.currentTimeMillis() - startTime);
+        StringBuilder report = new StringBuilder("thread usage in ").append(elapsed).append(" ms:");
+        for (int i = 0; i < threads.length; i++) {
+            long cpu = cpu(ids[i]);
+            long allocated = allocated(ids[i]);
+            if (cpu < 0 && allocated < 0) continue;
+            appendUsage(report.append(System.lineSeparator()).append("  ").append(threads[i].getName()).append(": "),
+                    cpu, startCpu[i], allocated, startAllocated[i], elapsed);
+        }
+        return report.toString();
+    }
+
+    private static StringBuilder appendUsage(StringBuilder out, long cpu, long fromCpu, long allocated,
+                                             long fromAllocated, long elapsedMillis) {
+        if (cpu >= 0 && fromCpu >= 0)
+            out.append(String.format("cpu %.1f ms (%.1f%%)", (cpu - fromCpu) / 1e6,
+                    (cpu - fromCpu) / 1e4 / elapsedMillis));
+        if (allocated >= 0 && fromAllocated >= 0)
+            out.append(String.format(" allocated %.1f KB (%.1f KB/s)", (allocated - fromAllocated) / 1024.0,
+                    (allocated - fromAllocated) / 1.024 / elapsedMillis));
+        return out;
+    }
+
+    /**
+     * @param thread - a sampled thread.
+     * @return - the bytes the thread allocated in the game so far (-1 if unknown).
+     */
+    public synchronized long allocatedBytes(Thread thread) {
+        for (int i = 0; i < threads.length; i++)
+            if (threads[i] == thread) {
+                long allocated = allocated(ids[i]);
+                return allocated >= 0 && startAllocated[i] >= 0 ? allocated - startAllocated[i] : -1;
+            }
+        return -1;
+    }
+}
@@ -0,0 +1,211 @@
+package bguspl.set;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import static java.lang.String.format;
+
+/**
+ * Sweeps game configuration parameters by running many self-play games per configuration point and reports the
+ * settings with the highest throughput and the lowest dead time.
+ * <p>
+ * Usage: {@code Tuner [tuner.properties]} (see the tuner.properties resource for the available settings).
+ */
+public class Tuner {
+
+    /**
+     * The prefix of the properties that list the values of a swept configuration parameter.
+     */
+    private static final String SWEEP_PREFIX = "Sweep.";
+
+    /**
+     * A single configuration point together with the aggregated results of its games.
+     */
+    private static class Point {
+
+        private final int id;
+        private final Map<String, String> values;
+        private int games;
+        private int completed;
+        private double setsPerMinute;
+        private double deadFraction;
+
+        private Point(int id, Map<String, String> values) {
+            this.id = id;
+            this.values = values;
+        }
+
+        private synchronized void add(SelfPlay.Result result) {
+            ++games;
+            if (result.completed) ++completed;
+            setsPerMinute += result.setsPerMinute();
+            deadFraction += result.deadFraction();
+        }
+
+        private synchronized double meanSetsPerMinute() {
+            return games > 0 ? setsPerMinute / games : 0;
+        }
+
+        private synchronized double meanDeadFraction() {
+            return games > 0 ? deadFraction / games : 1;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return format("point %d %s: %.2f sets/min, %.1f%% dead time (%d/%d games completed)",
+                    id, values, meanSetsPerMinute(), meanDeadFraction() * 100, completed, games);
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+
+        Logger logger = Logger.getAnonymousLogger();
+        Properties tuner = Config.loadProperties(args.length > 0 ? args[0] : "tuner.properties", logger);
+        Properties base = Config.loadProperties(tuner.getProperty("BaseConfig", "config.properties"), logger);
+
+        Map<String, String[]> sweep = new LinkedHashMap<>();
+        for (String key : tuner.stringPropertyNames())
+            if (key.startsWith(SWEEP_PREFIX))
+                sweep.put(key.substring(SWEEP_PREFIX.length()), tuner.getProperty(key).split(","));
+
+        int gamesPerPoint = Integer.parseInt(tuner.getProperty("GamesPerPoint", "4"));
+        int threads = Integer.parseInt(tuner.getProperty("Threads",
+                Integer.toString(Math.max(1, Runtime.getRuntime().availableProcessors() / 4))));
+        long maxGameMillis = (long) (Double.parseDouble(tuner.getProperty("MaxGameSeconds", "300")) * 1000.0);
+        List<Point> points = "random".equalsIgnoreCase(tuner.getProperty("Search", "grid"))
+                ? randomPoints(sweep, Integer.parseInt(tuner.getProperty("Samples", "10")))
+                : gridPoints(sweep, Integer.parseInt(tuner.getProperty("GridSteps", "3")));
+
+        System.out.println("running " + points.size() + " points x " + gamesPerPoint + " games on " + threads + " threads");
+        ExecutorService pool = Executors.newWorkStealingPool(threads);
+        try (BufferedWriter out = Files.newBufferedWriter(Paths.get(tuner.getProperty("Output", "tuning.csv")),
+                StandardCharsets.UTF_8)) {
+
+            out.write("point,game," + String.join(",", sweep.keySet())
+                    + ",completed,durationMillis,sets,setsPerMinute,deadMillis,deadFraction,reshuffles");
+            out.newLine();
+            out.flush();
+
+            List<Future<?>> games = new ArrayList<>();
+            for (Point point : points) {
+                Properties properties = new Properties();
+                properties.putAll(base);
+                properties.putAll(point.values);
+                for (int game = 0; game < gamesPerPoint; game++) {
+                    final int gameId = game;
+                    games.add(pool.submit(() -> {
+                        SelfPlay.Result result = SelfPlay.play(properties, maxGameMillis);
+                        point.add(result);
+                        String line = format("%d,%d,%s,%b,%d,%d,%.3f,%d,%.4f,%d", point.id, gameId,
+                                String.join(",", point.values.values()), result.completed, result.durationMillis,
+                                result.sets, result.setsPerMinute(), result.deadMillis, result.deadFraction(),
+                                result.reshuffles);
+                        synchronized (out) {
+                            out.write(line);
+                            out.newLine();
+                            out.flush();
+                        }
+                        return null;
+                    }));
+                }
+            }
+
+            for (Future<?> game : games) {
+                try {
+                    game.get();
+                } catch (ExecutionException e) {
+                    System.out.println("game failed: " + e.getCause());
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        for (Point point : points) System.out.println(point);
+        points.stream().max(Comparator.comparingDouble(Point::meanSetsPerMinute))
+                .ifPresent(point -> System.out.println("highest throughput: " + point));
+        points.stream().min(Comparator.comparingDouble(Point::meanDeadFraction))
+                .ifPresent(point -> System.out.println("lowest dead time: " + point));
+    }
+
+    /**
+     * Expands a swept parameter value list. A value of the form low..high stands for steps evenly spaced values.
+     */
+    private static List<String> expand(String[] values, int steps) {
+        List<String> expanded = new ArrayList<>();
+        for (String value : values) {
+            String[] range = value.trim().split("\\.\\.");
+            if (range.length != 2) {
+                expanded.add(value.trim());
+                continue;
+            }
+            double low = Double.parseDouble(range[0]), high = Double.parseDouble(range[1]);
+            for (int i = 0; i < steps; i++) {
+                double v = steps > 1 ? low + (high - low) * i / (steps - 1) : low;
+                expanded.add(isInteger(range[0]) && isInteger(range[1]) ? Long.toString(Math.round(v)) : Double.toString(v));
+            }
+        }
+        return expanded;
+    }
+
+    private static boolean isInteger(String value) {
+        return value.trim().matches("-?\\d+");
+    }
+
+    private static List<Point> gridPoints(Map<String, String[]> sweep, int steps) {
+        List<Map<String, String>> combinations = new ArrayList<>();
+        combinations.add(new LinkedHashMap<>());
+        for (Map.Entry<String, String[]> parameter : sweep.entrySet()) {
+            List<Map<String, String>> next = new ArrayList<>();
+            for (Map<String, String> combination : combinations)
+                for (String value : expand(parameter.getValue(), steps)) {
+                    Map<String, String> extended = new LinkedHashMap<>(combination);
+                    extended.put(parameter.getKey(), value);
+                    next.add(extended);
+                }
+            combinations = next;
+        }
+        List<Point> points = new ArrayList<>();
+        for (Map<String, String> combination : combinations) points.add(new Point(points.size(), combination));
+        return points;
+    }
+
+    private static List<Point> randomPoints(Map<String, String[]> sweep, int samples) {
+        Random random = new Random();
+        List<Point> points = new ArrayList<>();
+        for (int i = 0; i < samples; i++) {
+            Map<String, String> values = new LinkedHashMap<>();
+            for (Map.Entry<String, String[]> parameter : sweep.entrySet()) {
+                String[] choices = parameter.getValue();
+                String choice = choices[random.nextInt(choices.length)].trim();
+                String[] range = choice.split("\\.\\.");
+                if (range.length == 2) {
+                    // sample uniformly from the range instead of using the grid steps
+                    double low = Double.parseDouble(range[0]), high = Double.parseDouble(range[1]);
+                    if (isInteger(range[0]) && isInteger(range[1]))
+                        choice = Long.toString(Math.round(low) + (long) random.nextInt((int) (Math.round(high) - Math.round(low)) + 1));
+                    else
+                        choice = Double.toString(low + (high - low) * random.nextDouble());
+                }
+                values.put(parameter.getKey(), choice);
+            }
+            points.add(new Point(i, values));
+        }
+        return points;
+    }
+}
@@ -18,6 +18,19 @@ public interface UserInterface {
      */
     void removeCard(int slot);
 
+    /**
+     * Draw the card images corresponding to the card ids in the specified slots (as a single update).
+     * @param cards - the card ids.
+     * @param slots - the slot numbers (respectively).
+     */
+    void placeCards(int[] cards, int[] slots);
+
+    /**
+     * Draw empty card images in the specified slots and remove all players names text from them (as a single update).
+     * @param slots - the slot numbers.
+     */
+    void removeCards(int[] slots);
+
     /**
      * Draw a player name text in the specified slot.
      * @param player - the card id.
@@ -80,6 +93,16 @@ public interface UserInterface {
      */
     void announceWinner(int[] players);
 
+    /**
+     * Block until all the card transitions that were requested so far are displayed.
+     */
+    void awaitAnimations();
+
+    /**
+     * Prepare for a new game: clear all cards, tokens, scores and freezes and hide the winner announcement.
+     */
+    void reset();
+
     /**
      * Programmatically closes the window.
      */
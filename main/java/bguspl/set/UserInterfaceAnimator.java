@@ -0,0 +1,192 @@
+package bguspl.set;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Plays the card transitions of another user interface at the configured table delay on a background thread, so the
+ * game threads never wait for them (unless they call awaitAnimations).
+ * <p>
+ * Card and token updates are applied in the order they were made. Timer, freeze and score updates do not depend on
+ * the table and are passed through immediately.
+ */
+public class UserInterfaceAnimator implements UserInterface {
+
+    /**
+     * A pending user interface update.
+     */
+    private static class Step {
+
+        /**
+         * True iff the update is a card transition (i.e. it is delayed by the table delay).
+         */
+        private final boolean transition;
+        private final Runnable action;
+
+        private Step(boolean transition, Runnable action) {
+            this.transition = transition;
+            this.action = action;
+        }
+    }
+
+    private final Logger logger;
+    private final UserInterface ui;
+    private final long delayMillis;
+    private final BlockingQueue<Step> steps = new LinkedBlockingQueue<>();
+
+    /**
+     * The number of updates that were queued but not applied yet.
+     */
+    private int pending;
+    private final Lock pendingLock = new ReentrantLock();
+    private final Condition drained = pendingLock.newCondition();
+
+    private final Thread animator;
+    private volatile boolean terminate;
+
+    public UserInterfaceAnimator(Logger logger, Config config, UserInterface ui) {
+        this.logger = logger;
+        this.ui = ui;
+        this.delayMillis = config.tableDelayMillis;
+        animator = new Thread(this::animate, "ui-animator");
+        animator.setDaemon(true);
+        animator.start();
+    }
+
+    private void animate() {
+        while (!terminate) {
+            Step step;
+            try {
+                step = steps.take();
+            } catch (InterruptedException ignored) {
+                continue;
+            }
+
+            // a failed update must neither stop the animator nor leave the dealer waiting for it
+            try {
+                if (step.transition && delayMillis > 0) Thread.sleep(delayMillis);
+                step.action.run();
+            } catch (InterruptedException ignored) {
+            } catch (RuntimeException e) {
+                logger.log(Level.SEVERE, "user interface update failed: " + e, e);
+            } finally {
+                pendingLock.lock();
+                try {
+                    if (--pending == 0) drained.signalAll();
+                } finally {
+                    pendingLock.unlock();
+                }
+            }
+        }
+    }
+
+    private void enqueue(boolean transition, Runnable action) {
+        pendingLock.lock();
+        try {
+            ++pending;
+        } finally {
+            pendingLock.unlock();
+        }
+        steps.add(new Step(transition, action));
+    }
+
+    @Override
+    public void placeCard(int card, int slot) {
+        enqueue(true, () -> ui.placeCard(card, slot));
+    }
+
+    @Override
+    public void removeCard(int slot) {
+        enqueue(true, () -> ui.removeCard(slot));
+    }
+
+    @Override
+    public void placeCards(int[] cards, int[] slots) {
+        enqueue(true, () -> ui.placeCards(cards, slots));
+    }
+
+    @Override
+    public void removeCards(int[] slots) {
+        enqueue(true, () -> ui.removeCards(slots));
+    }
+
+    @Override
+    public void placeToken(int player, int slot) {
+        enqueue(false, () -> ui.placeToken(player, slot));
+    }
+
+    @Override
+    public void removeTokens() {
+        enqueue(false, ui::removeTokens);
+    }
+
+    @Override
+    public void removeTokens(int slot) {
+        enqueue(false, () -> ui.removeTokens(slot));
+    }
+
+    @Override
+    public void removeToken(int player, int slot) {
+        enqueue(false, () -> ui.removeToken(player, slot));
+    }
+
+    @Override
+    public void setCountdown(long millies, boolean warn) {
+        ui.setCountdown(millies, warn);
+    }
+
+    @Override
+    public void setElapsed(long millies) {
+        ui.setElapsed(millies);
+    }
+
+    @Override
+    public void setFreeze(int player, long millies) {
+        ui.setFreeze(player, millies);
+    }
+
+    @Override
+    public void setScore(int player, int score) {
+        ui.setScore(player, score);
+    }
+
+    @Override
+    public void announceWinner(int[] players) {
+        enqueue(false, () -> ui.announceWinner(players));
+    }
+
+    @Override
+    public void awaitAnimations() {
+        pendingLock.lock();
+        try {
+            while (pending > 0 && !terminate)
+                drained.await();
+        } catch (InterruptedException ignored) {
+        } finally {
+            pendingLock.unlock();
+        }
+    }
+
+    @Override
+    public void reset() {
+        enqueue(false, ui::reset);
+    }
+
+    @Override
+    public void dispose() {
+        terminate = true;
+        animator.interrupt();
+        pendingLock.lock();
+        try {
+            drained.signalAll();
+        } finally {
+            pendingLock.unlock();
+        }
+        ui.dispose();
+    }
+}
@@ -1,104 +1,196 @@
 package bguspl.set;
 
-import java.util.Arrays;
-import java.util.List;
+import bguspl.set.GameLog.Category;
+
+import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 
 public class UserInterfaceDecorator implements UserInterface {
 
-    private final Logger logger;
+    private final GameLog log;
     private final Util util;
     private final UserInterface ui;
 
-    public UserInterfaceDecorator(Logger logger, Util util, UserInterface ui) {
+    /**
+     * The messages of the user interface calls (formatted by the log writer thread).
+     */
+    private static final AsyncLogHandler.Template PLACE_CARD = (out, args) ->
+            out.append("placing card ").append(args.a()).append(" in slot ").append(args.b());
+    private static final AsyncLogHandler.Template REMOVE_CARD = (out, args) ->
+            out.append("removing card from slot ").append(args.a());
+    private static final AsyncLogHandler.Template PLACE_CARDS = (out, args) ->
+            args.appendY(args.appendX(out.append("placing cards ")).append(" in slots "));
+    private static final AsyncLogHandler.Template REMOVE_CARDS = (out, args) ->
+            args.appendX(out.append("removing cards from slots "));
+    private static final AsyncLogHandler.Template PLACE_TOKEN = (out, args) ->
+            out.append("player ").append(args.a() + 1).append(" placing token on slot ").append(args.b());
+    private static final AsyncLogHandler.Template REMOVE_ALL_TOKENS = (out, args) ->
+            out.append("removing all tokens");
+    private static final AsyncLogHandler.Template REMOVE_TOKENS = (out, args) ->
+            out.append("removing tokens from slot ").append(args.a());
+    private static final AsyncLogHandler.Template REMOVE_TOKEN = (out, args) ->
+            out.append("removing player ").append(args.a() + 1).append(" token from slot ").append(args.b());
+    private static final AsyncLogHandler.Template SET_COUNTDOWN = (out, args) ->
+            out.append("updating countdown to ").append(args.a());
+    private static final AsyncLogHandler.Template SET_ELAPSED = (out, args) ->
+            out.append("updating elapsed time to ").append(args.a());
+    private static final AsyncLogHandler.Template SET_FREEZE = (out, args) ->
+            out.append("setting player ").append(args.a() + 1).append(" freeze to ").append(args.b());
+    private static final AsyncLogHandler.Template SET_SCORE = (out, args) ->
+            out.append("setting player ").append(args.a() + 1).append(" score to ").append(args.b());
+    private static final AsyncLogHandler.Template ANNOUNCE_WINNER = (out, args) -> {
+        out.append("announcing winner(s): ");
+        for (int i = 0; i < args.xLength(); i++)
+            out.append(i > 0 ? ", " : "").append("player ").append(args.x()[i] + 1);
+    };
+    private static final AsyncLogHandler.Template RESET = (out, args) ->
+            out.append("resetting user interface for a new game");
+    private static final AsyncLogHandler.Template DISPOSE = (out, args) ->
+            out.append("disposing of user interface elements");
+
+    /**
+     * The number of calls of each user interface method (shared by the user interfaces of all the rooms).
+     */
+    private static final Metrics.Counter placeCardEvents = events("placeCard");
+    private static final Metrics.Counter removeCardEvents = events("removeCard");
+    private static final Metrics.Counter placeCardsEvents = events("placeCards");
+    private static final Metrics.Counter removeCardsEvents = events("removeCards");
+    private static final Metrics.Counter placeTokenEvents = events("placeToken");
+    private static final Metrics.Counter removeTokensEvents = events("removeTokens");
+    private static final Metrics.Counter removeTokenEvents = events("removeToken");
+    private static final Metrics.Counter setCountdownEvents = events("setCountdown");
+    private static final Metrics.Counter setElapsedEvents = events("setElapsed");
+    private static final Metrics.Counter setFreezeEvents = events("setFreeze");
+    private static final Metrics.Counter setScoreEvents = events("setScore");
+    private static final Metrics.Counter announceWinnerEvents = events("announceWinner");
+
+    private static Metrics.Counter events(String method) {
+        return Metrics.registry().counter("set_ui_events_total", "Calls of the user interface.", "event", method);
+    }
+
+    public UserInterfaceDecorator(Logger logger, Config config, Util util, UserInterface ui) {
         this.ui = ui;
-        this.logger = logger;
+        this.log = new GameLog(logger, config);
         this.util = util;
-
-        if (ui == null) System.out.println("running without a user interface. Check logs.");
     }
 
     @Override
     public void placeCard(int card, int slot) {
-        logger.severe("placing card " + card + " in slot " + slot);
+        placeCardEvents.inc();
+        log.log(Category.CARDS, Level.FINE, PLACE_CARD, card, slot);
         util.spin();
         if (ui != null) ui.placeCard(card, slot);
     }
 
     @Override
     public void removeCard(int slot) {
-        logger.severe("removing card from slot " + slot);
+        removeCardEvents.inc();
+        log.log(Category.CARDS, Level.FINE, REMOVE_CARD, slot);
         util.spin();
         if (ui != null) ui.removeCard(slot);
     }
 
+    @Override
+    public void placeCards(int[] cards, int[] slots) {
+        placeCardsEvents.inc();
+        log.log(Category.CARDS, Level.FINE, PLACE_CARDS, cards, slots);
+        util.spin();
+        if (ui != null) ui.placeCards(cards, slots);
+    }
+
+    @Override
+    public void removeCards(int[] slots) {
+        removeCardsEvents.inc();
+        log.log(Category.CARDS, Level.FINE, REMOVE_CARDS, slots, null);
+        util.spin();
+        if (ui != null) ui.removeCards(slots);
+    }
+
     @Override
     public void placeToken(int player, int slot) {
-        logger.severe("player " + (player + 1) + " placing token on slot " + slot);
+        placeTokenEvents.inc();
+        log.log(Category.TOKENS, Level.FINE, PLACE_TOKEN, player, slot);
         util.spin();
         if (ui != null) ui.placeToken(player, slot);
     }
 
     @Override
     public void removeTokens() {
-        logger.severe("removing all tokens");
+        removeTokensEvents.inc();
+        log.log(Category.TOKENS, Level.FINE, REMOVE_ALL_TOKENS, 0);
         util.spin();
         if (ui != null) ui.removeTokens();
     }
 
     @Override
     public void removeTokens(int slot) {
-        logger.severe("removing tokens from slot " + slot);
+        removeTokensEvents.inc();
+        log.log(Category.TOKENS, Level.FINE, REMOVE_TOKENS, slot);
         util.spin();
         if (ui != null) ui.removeTokens(slot);
     }
 
     @Override
     public void removeToken(int player, int slot) {
-        logger.severe("removing player " + (player + 1) + " token from slot " + slot);
+        removeTokenEvents.inc();
+        log.log(Category.TOKENS, Level.FINE, REMOVE_TOKEN, player, slot);
         util.spin();
         if (ui != null) ui.removeToken(player, slot);
     }
 
     @Override
     public void setCountdown(long millies, boolean warn) {
+        setCountdownEvents.inc();
         if (!warn || millies % 1000L == 0L)
-            logger.severe("updating countdown to " + millies);
+            log.log(Category.TIMER, Level.FINER, SET_COUNTDOWN, millies);
         if (ui != null) ui.setCountdown(millies, warn);
     }
 
     @Override
     public void setElapsed(long millies) {
-        logger.severe("updating elapsed time to " + millies);
+        setElapsedEvents.inc();
+        log.log(Category.TIMER, Level.FINER, SET_ELAPSED, millies);
         util.spin();
         if (ui != null) ui.setElapsed(millies);
     }
 
     @Override
     public void setFreeze(int player, long millies) {
-        logger.severe("setting player " + (player + 1) + " freeze to " + millies);
+        setFreezeEvents.inc();
+        log.log(Category.PLAYERS, Level.FINE, SET_FREEZE, player, millies);
         util.spin();
         if (ui != null) ui.setFreeze(player, millies);
     }
 
     @Override
     public void setScore(int player, int score) {
-        logger.severe("setting player " + (player + 1) + " score to " + score);
+        setScoreEvents.inc();
+        log.log(Category.PLAYERS, Level.FINE, SET_SCORE, player, score);
         util.spin();
         if (ui != null) ui.setScore(player, score);
     }
 
     @Override
     public void announceWinner(int[] players) {
-        List<String> winners = Arrays.stream(players).mapToObj(id -> "player " + (id + 1)).collect(Collectors.toList());
-        logger.severe("announcing winner(s): " + String.join(", ", winners));
+        announceWinnerEvents.inc();
+        log.log(Category.PLAYERS, Level.INFO, ANNOUNCE_WINNER, players, null);
         if (ui != null) ui.announceWinner(players);
     }
 
+    @Override
+    public void awaitAnimations() {
+        if (ui != null) ui.awaitAnimations();
+    }
+
+    @Override
+    public void reset() {
+        log.log(Category.GAME, Level.INFO, RESET, 0);
+        if (ui != null) ui.reset();
+    }
+
     @Override
     public void dispose() {
-        logger.severe("disposing of user interface elements");
+        log.log(Category.GAME, Level.INFO, DISPOSE, 0);
         if (ui != null) ui.dispose();
     }
 }
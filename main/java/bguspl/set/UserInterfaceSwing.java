@@ -4,10 +4,15 @@ import bguspl.set.ex.Player;
 
 import javax.swing.*;
 import java.awt.*;
-import java.io.FileNotFoundException;
-import java.net.URL;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -15,6 +20,10 @@ import static java.lang.String.format;
 
 /**
  * Java Swing implementation of the UserInterface interface.
+ * <p>
+ * The game threads only update a view model. A render loop on the event dispatch thread copies it into a snapshot at
+ * the configured frame rate and applies the snapshot to the Swing components, so any number of updates between two
+ * frames are displayed by a single paint.
  */
 public class UserInterfaceSwing extends JFrame implements UserInterface {
 
@@ -23,6 +32,39 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
     private final PlayersPanel playersPanel;
     private final WinnerPanel winnerPanel;
     private final Config config;
+    private final Logger logger;
+
+    /**
+     * The view model written by the game threads (guarded by viewLock).
+     */
+    private final ViewModel model;
+    private final Lock viewLock = new ReentrantLock();
+
+    /**
+     * The copy of the view model the render loop displays (used by the event dispatch thread only).
+     */
+    private final ViewModel snapshot;
+
+    /**
+     * The render loop.
+     */
+    private final Timer renderTimer;
+
+    /**
+     * True iff the capacity this window reserved in the card image cache was released (on the first dispose).
+     */
+    private final AtomicBoolean cacheReleased = new AtomicBoolean();
+
+    private final InputManager inputManager;
+
+    /**
+     * The sizes the table and the players are displayed with (scaled down to fit the screen in big-board mode).
+     */
+    private final int cellWidth;
+    private final int cellHeight;
+    private final int playerCellWidth;
+    private final int playerCellHeight;
+    private final int playerFontSize;
 
     static String intInBaseToPaddedString(int n, int padding, int base) {
         return format("%" + padding + "s", Integer.toString(n, base)).replace(' ', '0');
@@ -31,6 +73,29 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
     public UserInterfaceSwing(Logger logger, Config config, Player[] players) {
 
         this.config = config;
+        this.logger = logger;
+
+        double cellScale = 1, playerScale = 1;
+        if (config.bigBoard) {
+            Rectangle screen = GraphicsEnvironment.getLocalGraphicsEnvironment().getMaximumWindowBounds();
+            // leave room for the window decorations, the timer and the players
+            int tableHeight = screen.height - 2 * config.fontSize - 2 * config.playerCellHeight - 60;
+            cellScale = Math.min(1, Math.min((double) screen.width / (config.columns * config.cellWidth),
+                    (double) tableHeight / (config.rows * config.cellHeight)));
+            playerScale = Math.min(1, (double) screen.width / (config.players * config.playerCellWidth));
+        }
+        cellWidth = Math.max(1, (int) (config.cellWidth * cellScale));
+        cellHeight = Math.max(1, (int) (config.cellHeight * cellScale));
+        playerCellWidth = Math.max(1, (int) (config.playerCellWidth * playerScale));
+        playerCellHeight = config.playerCellHeight;
+        playerFontSize = Math.max(8, (int) (config.fontSize * playerScale));
+        if (cellScale < 1 || playerScale < 1)
+            logger.info("big board: cells scaled to " + cellWidth + "x" + cellHeight + ", player cells to "
+                    + playerCellWidth + " pixels.");
+
+        inputManager = new InputManager(logger, config, players);
+        model = new ViewModel(config);
+        snapshot = new ViewModel(config);
         timerPanel = new TimerPanel();
         gamePanel = new GamePanel();
         playersPanel = new PlayersPanel();
@@ -63,152 +128,405 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         setLocationRelativeTo(null);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
-        addKeyListener(new InputManager(logger, config, players));
+        addKeyListener(inputManager);
         addWindowListener(new WindowManager());
 
+        renderTimer = new Timer(1000 / Math.max(1, config.frameRate), e -> render());
+        renderTimer.setCoalesce(true);
+        renderTimer.start();
+
         EventQueue.invokeLater(() -> setVisible(true));
     }
 
+    /**
+     * Everything that is displayed, in a form that is cheap to update and to copy.
+     */
+    private static class ViewModel {
+
+        /**
+         * The card in each slot (-1 if none).
+         */
+        private final int[] cards;
+
+        /**
+         * The players that have a token on each slot, as a bitmask of tokenWords longs per slot (bit player % 64 of
+         * word slot * tokenWords + player / 64).
+         */
+        private final long[] tokens;
+        private final int tokenWords;
+
+        private final int[] scores;
+        private final long[] freezes;
+
+        /**
+         * The timer state: the milliseconds to show (or -1 before the first update) and how to show them.
+         */
+        private long timerMillies = -1;
+        private boolean warn;
+        private boolean elapsed;
+
+        /**
+         * The winners to announce (null while the game is on).
+         */
+        private int[] winners;
+
+        /**
+         * Incremented on every change.
+         */
+        private long version;
+
+        private ViewModel(Config config) {
+            cards = new int[config.tableSize];
+            Arrays.fill(cards, -1);
+            tokenWords = (config.players + 63) >>> 6;
+            tokens = new long[config.tableSize * tokenWords];
+            scores = new int[config.players];
+            freezes = new long[config.players];
+        }
+
+        private void copyFrom(ViewModel other) {
+            System.arraycopy(other.cards, 0, cards, 0, cards.length);
+            System.arraycopy(other.tokens, 0, tokens, 0, tokens.length);
+            System.arraycopy(other.scores, 0, scores, 0, scores.length);
+            System.arraycopy(other.freezes, 0, freezes, 0, freezes.length);
+            timerMillies = other.timerMillies;
+            warn = other.warn;
+            elapsed = other.elapsed;
+            winners = other.winners;
+            version = other.version;
+        }
+
+        private void setToken(int player, int slot, boolean on) {
+            int word = slot * tokenWords + (player >>> 6);
+            if (on) tokens[word] |= 1L << player;
+            else tokens[word] &= ~(1L << player);
+        }
+
+        private void clearTokens(int slot) {
+            Arrays.fill(tokens, slot * tokenWords, (slot + 1) * tokenWords, 0L);
+        }
+    }
+
+    /**
+     * Applies the latest view model to the components (called by the render loop on the event dispatch thread).
+     */
+    private void render() {
+        viewLock.lock();
+        try {
+            if (snapshot.version == model.version) return;
+            snapshot.copyFrom(model);
+        } finally {
+            viewLock.unlock();
+        }
+
+        timerPanel.render(snapshot);
+        gamePanel.render(snapshot);
+        playersPanel.render(snapshot);
+        winnerPanel.render(snapshot);
+    }
+
     private class TimerPanel extends JPanel {
 
         private final JLabel timerField;
 
+        /**
+         * The value currently displayed (seconds, or hundredths of a second when warning), to skip unchanged frames.
+         */
+        private long shownValue = -1;
+        private boolean shownWarn;
+        private boolean shownElapsed;
+
         private String generateTime(long millies, boolean warn) {
-            if (warn)
-                return format("Remaining Time: %.2f", (double) millies / 1000.0f);
-            else
-                return format("Remaining Time: %d", millies / 1000L);
+            StringBuilder text = new StringBuilder("Remaining Time: ").append(millies / 1000L);
+            if (warn) {
+                long hundredths = millies / 10L % 100L;
+                text.append(hundredths < 10 ? ".0" : ".").append(hundredths);
+            }
+            return text.toString();
         }
 
         private TimerPanel() {
-            timerField = new JLabel(config.turnTimeoutMillis < 0 ? "PLAY" : "GET READY...");
+            timerField = new FixedLabel(config.turnTimeoutMillis < 0 ? "PLAY" : "GET READY...");
 
             // set fonts and color
             timerField.setFont(new Font("Serif", Font.BOLD, config.fontSize));
             timerField.setForeground(Color.BLACK);
 
-            add(timerField);
-        }
+            // make room for the longest text, so updating the time does not change the layout
+            FontMetrics metrics = timerField.getFontMetrics(timerField.getFont());
+            long seconds = Math.max(config.turnTimeoutMillis, config.turnTimeoutWarningMillis) / 1000;
+            int width = Math.max(metrics.stringWidth(generateTime(seconds * 1000 + 990, true)),
+                    metrics.stringWidth("Elapsed time: 00000"));
+            width = Math.max(width, metrics.stringWidth(timerField.getText()));
+            timerField.setPreferredSize(new Dimension(width, metrics.getHeight()));
 
-        private void setCountdown(long millies, boolean warn) {
-            timerField.setText(generateTime(millies, warn));
-            timerField.setForeground(warn ? Color.RED : Color.BLACK);
+            add(timerField);
         }
 
-        private void setElapsed(long millies) {
-            timerField.setText("Elapsed time: " + millies / 1000);
+        private void render(ViewModel view) {
+            if (view.timerMillies < 0) return;
+            long millies = view.timerMillies;
+            long value = view.warn && !view.elapsed ? millies / 10L : millies / 1000L;
+            if (value == shownValue && view.warn == shownWarn && view.elapsed == shownElapsed) return;
+            shownValue = value;
+            shownWarn = view.warn;
+            shownElapsed = view.elapsed;
+
+            if (view.elapsed) {
+                timerField.setText("Elapsed time: " + millies / 1000);
+                timerField.setForeground(Color.BLACK);
+            } else {
+                timerField.setText(generateTime(millies, view.warn));
+                timerField.setForeground(view.warn ? Color.RED : Color.BLACK);
+            }
         }
     }
 
     private class GamePanel extends JLayeredPane {
 
-        private final Image emptyCard;
-        private final Image[] deck;
-        private final Image[][] grid;
-        private final boolean[][][] playerTokens;
-        private final JLabel[][] tokenText;
+        private static final int BADGE_PADDING = 4;
+
+        /**
+         * The cards and tokens currently displayed (the tokens in the layout of ViewModel.tokens).
+         */
+        private final int[] shownCards;
+        private final long[] shownTokens;
+        private final int tokenWords;
+
+        /**
+         * A pre-rendered name tag of each player, drawn over the slots the player has tokens on.
+         */
+        private final Image[] badges;
+
+        /**
+         * The image resource names of the cards (the last one is the empty card).
+         */
+        private final String[] filenames;
+
+        /**
+         * Draws the cards of decks that have no card images (null if the images are used).
+         */
+        private final CardRenderer renderer;
+
+        /**
+         * Repaints each cell once its card image finished loading in the background.
+         */
+        private final Runnable[] imageLoaded;
+
+        /**
+         * True iff the cell of the slot has to be repainted on the next frame.
+         */
+        private final boolean[] dirty;
+
+        /**
+         * The number of pixels painted since repaintWindowStart (reported once a second when debugging).
+         */
+        private long repaintedPixels;
+        private long repaintWindowStart = System.currentTimeMillis();
+
+        private GamePanel() {
 
-        private Image loadImageResource(String filename) {
-            URL imageResource = getClass().getClassLoader().getResource(filename);
-            if (imageResource == null)
-                throw new RuntimeException(new FileNotFoundException(filename));
-            return new ImageIcon(imageResource).getImage();
+            setPreferredSize(new Dimension(config.columns * cellWidth, config.rows * cellHeight));
+
+            // the images are loaded lazily, so make sure the cards on the table fit in the shared cache
+            CardImages.reserve(config.imageCacheSize);
+            filenames = new String[config.deckSize + 1];
+            filenames[config.deckSize] = "cards/empty_card.png";
+            // feature values above 9 would cause naming conflicts, so such decks never have images
+            if (config.proceduralCards || config.featureSize >= 10 || !hasImage(config.deckSize - 1)) {
+                renderer = new CardRenderer(config, new UtilImpl(config));
+            } else {
+                renderer = null;
+                for (int i = 0; i < config.deckSize; ++i)
+                    filenames[i] = cardImageName(i);
+            }
+
+            shownCards = new int[config.tableSize];
+            Arrays.fill(shownCards, -1);
+            tokenWords = (config.players + 63) >>> 6;
+            shownTokens = new long[config.tableSize * tokenWords];
+            dirty = new boolean[config.tableSize];
+            imageLoaded = new Runnable[config.tableSize];
+            for (int slot = 0; slot < config.tableSize; slot++) {
+                Rectangle cell = cellBounds(slot);
+                imageLoaded[slot] = () -> repaint(cell);
+            }
+            // every pixel of the grid is painted, so nothing behind the panel has to be painted first
+            setOpaque(true);
+
+            // a click selects the slot for the first human player
+            addMouseListener(new MouseAdapter() {
+                @Override
+                public void mousePressed(MouseEvent e) {
+                    int column = e.getX() / cellWidth, row = e.getY() / cellHeight;
+                    if (column < config.columns && row < config.rows)
+                        inputManager.slotClicked(row * config.columns + column, e.getWhen());
+                }
+            });
+
+            badges = new Image[config.players];
+            Font font = new JLabel().getFont();
+            for (int player = 0; player < config.players; player++)
+                badges[player] = createBadge(config.playerNames[player], font);
         }
 
-        private GamePanel() {
+        private Image createBadge(String name, Font font) {
+            BufferedImage measure = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+            Graphics2D mg = measure.createGraphics();
+            FontMetrics metrics = mg.getFontMetrics(font);
+            mg.dispose();
+            int width = metrics.stringWidth(name) + 2 * BADGE_PADDING;
+            int height = metrics.getHeight() + BADGE_PADDING;
+            BufferedImage badge = CardImages.createCompatibleImage(width, height);
+            Graphics2D g = badge.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g.setColor(new Color(255, 255, 255, 200));
+            g.fillRoundRect(0, 0, width - 1, height - 1, height / 2, height / 2);
+            g.setColor(Color.BLACK);
+            g.drawRoundRect(0, 0, width - 1, height - 1, height / 2, height / 2);
+            g.setFont(font);
+            g.drawString(name, BADGE_PADDING, BADGE_PADDING / 2 + metrics.getAscent());
+            g.dispose();
+            return badge;
+        }
 
-            setPreferredSize(new Dimension(config.columns * config.cellWidth, config.rows * config.cellHeight));
-
-            // init deck and load all pictures from png files
-            assert config.featureSize < 10; // otherwise there will be naming conflicts
-
-            // load the image resources
-            deck = new Image[config.deckSize];
-            for (int i = 0; i < config.deckSize; ++i)
-                deck[i] = loadImageResource("cards/" + intInBaseToPaddedString(i, config.featureCount, config.featureSize) + ".png");
-            emptyCard = loadImageResource("cards/empty_card.png");
-
-            grid = new Image[config.rows][config.columns];
-            tokenText = new JLabel[config.rows][config.columns];
-            playerTokens = new boolean[config.players][config.rows][config.columns];
-            for (int row = 0; row < config.rows; row++) {
-                for (int column = 0; column < config.columns; column++) {
-                    // init the cards on the table grid as empty cards
-                    grid[row][column] = emptyCard;
-
-                    // init the JLabel selection overlay
-                    tokenText[row][column] = new JLabel("");
-                    tokenText[row][column].setVerticalAlignment(JLabel.TOP);
-                    tokenText[row][column].setHorizontalAlignment(JLabel.CENTER);
-                    tokenText[row][column].setOpaque(false);
-                    tokenText[row][column].setBorder(BorderFactory.createLineBorder(Color.black));
-                    tokenText[row][column].setBounds((column * config.cellWidth), (row * config.cellHeight), config.cellWidth, config.cellHeight);
-                    add(tokenText[row][column]);
+        private Rectangle cellBounds(int slot) {
+            return new Rectangle((slot % config.columns) * cellWidth, (slot / config.columns) * cellHeight,
+                    cellWidth, cellHeight);
+        }
+
+        private void render(ViewModel view) {
+            int dirtyCells = 0;
+            for (int slot = 0; slot < config.tableSize; slot++) {
+                if (shownCards[slot] != view.cards[slot]) {
+                    shownCards[slot] = view.cards[slot];
+                    dirty[slot] = true;
+                }
+                int from = slot * tokenWords;
+                for (int word = from; word < from + tokenWords; word++) {
+                    if (shownTokens[word] != view.tokens[word]) {
+                        shownTokens[word] = view.tokens[word];
+                        dirty[slot] = true;
+                    }
+                }
+                if (dirty[slot]) dirtyCells++;
+            }
+            if (dirtyCells == 0) return;
+
+            // the repaint manager would merge the cells into their bounding box, so paint each cell by itself
+            // (unless most of the table changed anyway)
+            if (dirtyCells > config.tableSize / 2) {
+                Arrays.fill(dirty, false);
+                repaint();
+                return;
+            }
+            for (int slot = 0; slot < config.tableSize; slot++) {
+                if (dirty[slot]) {
+                    dirty[slot] = false;
+                    paintImmediately(cellBounds(slot));
                 }
             }
         }
 
-        private void placeCard(int slot, int card) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
-            grid[row][column] = deck[card];
-            validate();
-            repaint();
+        private String cardImageName(int card) {
+            return "cards/" + intInBaseToPaddedString(card, config.featureCount, config.featureSize) + ".png";
         }
 
-        private void removeCard(int slot) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
-            grid[row][column] = emptyCard;
-            validate();
-            repaint();
+        private boolean hasImage(int card) {
+            return getClass().getClassLoader().getResource(cardImageName(card)) != null;
         }
 
-        private void placeToken(int player, int slot) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
-            playerTokens[player][row][column] = true;
-            tokenText[row][column].setText(generatePlayersTokenText(row, column));
+        private Image cardImage(int card, int slot) {
+            if (card >= 0 && renderer != null)
+                return CardImages.get(logger, renderer, card, cellWidth, cellHeight, imageLoaded[slot]);
+            return CardImages.get(logger, filenames[card < 0 ? config.deckSize : card], cellWidth, cellHeight, imageLoaded[slot]);
         }
 
-        private void removeTokens() {
-            for (int i = 0; i < config.tableSize; i++)
-                removeTokens(i);
+        @Override
+        public void paintComponent(Graphics g) {
+            Rectangle clip = g.getClipBounds();
+            if (clip == null) clip = new Rectangle(0, 0, getWidth(), getHeight());
+            g.setColor(getBackground());
+            g.fillRect(clip.x, clip.y, clip.width, clip.height);
+
+            // draw the card images of the cells inside the clip, or a placeholder for the images that are still loading
+            int firstColumn = Math.max(0, clip.x / cellWidth);
+            int lastColumn = Math.min(config.columns - 1, (clip.x + clip.width - 1) / cellWidth);
+            int firstRow = Math.max(0, clip.y / cellHeight);
+            int lastRow = Math.min(config.rows - 1, (clip.y + clip.height - 1) / cellHeight);
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    int slot = row * config.columns + column;
+                    if (slot < config.tableSize) paintCell(g, slot, column * cellWidth, row * cellHeight);
+                }
+            }
+            countRepaint((long) clip.width * clip.height);
         }
 
-        private void removeTokens(int slot) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
-            for (int player = 0; player < playerTokens.length; player++) {
-                playerTokens[player][row][column] = false;
-                tokenText[row][column].setText(generatePlayersTokenText(row, column));
+        private void paintCell(Graphics g, int slot, int x, int y) {
+            Image image = cardImage(shownCards[slot], slot);
+            if (image == null && shownCards[slot] >= 0) image = cardImage(-1, slot);
+            if (image != null) g.drawImage(image, x, y, this);
+            else {
+                g.setColor(Color.LIGHT_GRAY);
+                g.fillRect(x, y, cellWidth, cellHeight);
             }
+            g.setColor(Color.BLACK);
+            g.drawRect(x, y, cellWidth - 1, cellHeight - 1);
+            paintTokens(g, slot, x, y);
         }
 
-        private void removeToken(int player, int slot) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
-            playerTokens[player][row][column] = false;
-            tokenText[row][column].setText(generatePlayersTokenText(row, column));
+        /**
+         * Adds painted pixels to the debug counter and logs it once a second (only if fine logging is enabled).
+         */
+        private void countRepaint(long pixels) {
+            if (!logger.isLoggable(Level.FINE)) return;
+            repaintedPixels += pixels;
+            long now = System.currentTimeMillis();
+            if (now - repaintWindowStart >= 1000) {
+                logger.fine("game panel repainted " + repaintedPixels * 1000 / (now - repaintWindowStart) + " pixels/sec.");
+                repaintedPixels = 0;
+                repaintWindowStart = now;
+            }
         }
 
-        private String generatePlayersTokenText(int row, int column) {
-            String text = "";
-            for (int player = 0; player < config.players; player++) {
-                if (playerTokens[player][row][column])
-                    text = text.concat(config.playerNames[player] + ", ");
+        /**
+         * Draws the badges of the players that have a token on the slot, in rows from the top of the cell.
+         */
+        private void paintTokens(Graphics g, int slot, int x, int y) {
+            int left = x + BADGE_PADDING, top = y + BADGE_PADDING, rowHeight = 0;
+            for (int word = 0; word < tokenWords; word++) {
+                for (long bits = shownTokens[slot * tokenWords + word]; bits != 0; bits &= bits - 1) {
+                    Image badge = badges[(word << 6) + Long.numberOfTrailingZeros(bits)];
+                    int width = badge.getWidth(null);
+                    if (left + width > x + cellWidth && left > x + BADGE_PADDING) {
+                        left = x + BADGE_PADDING;
+                        top += rowHeight + BADGE_PADDING;
+                        rowHeight = 0;
+                    }
+                    g.drawImage(badge, left, top, null);
+                    left += width + BADGE_PADDING;
+                    rowHeight = Math.max(rowHeight, badge.getHeight(null));
+                }
             }
-            if (text.length() < 2)
-                return "";
-            return text.substring(0, text.length() - 2);
+        }
+    }
+
+    /**
+     * A label with a fixed preferred size, so changing its text only repaints it instead of validating the layout.
+     */
+    private static class FixedLabel extends JLabel {
+
+        private static final long serialVersionUID = 1L;
+
+        private FixedLabel(String text) {
+            super(text);
         }
 
         @Override
-        public void paintComponent(Graphics g) {
-            // draw card images
-            for (int row = 0; row < config.rows; row++)
-                for (int column = 0; column < config.columns; column++)
-                    g.drawImage(grid[row][column], (column * config.cellWidth), (row * config.cellHeight), this);
+        public void revalidate() {
+            if (!isPreferredSizeSet()) super.revalidate();
         }
     }
 
@@ -216,25 +534,50 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
 
         private final JLabel[][] playersTable;
 
+        /**
+         * The scores and freeze seconds currently displayed (-1 if not frozen).
+         */
+        private final int[] shownScores;
+        private final long[] shownFreezes;
+
         private PlayersPanel() {
             this.setLayout(new GridLayout(2, config.players));
-            this.setPreferredSize(new Dimension(config.players * config.playerCellWidth, config.rows * config.playerCellHeight));
+            this.setPreferredSize(new Dimension(config.players * playerCellWidth, (config.bigBoard ? 2 : config.rows) * playerCellHeight));
             this.playersTable = new JLabel[2][config.players];
+            this.shownScores = new int[config.players];
+            this.shownFreezes = new long[config.players];
+            Arrays.fill(shownFreezes, -1);
             for (int i = 0; i < config.players; i++) {
-                this.playersTable[0][i] = new JLabel(config.playerNames[i]);
-                this.playersTable[0][i].setFont(new Font("Serif", Font.BOLD, config.fontSize));
+                this.playersTable[0][i] = new FixedLabel(config.playerNames[i]);
+                this.playersTable[0][i].setFont(new Font("Serif", Font.BOLD, playerFontSize));
                 this.playersTable[0][i].setHorizontalAlignment(JLabel.CENTER);
+                this.playersTable[0][i].setPreferredSize(new Dimension(playerCellWidth, playerCellHeight));
                 this.add(playersTable[0][i]);
             }
 
             for (int i = 0; i < config.players; i++) {
-                this.playersTable[1][i] = new JLabel("0");
-                this.playersTable[1][i].setFont(new Font("Serif", Font.PLAIN, config.fontSize));
+                this.playersTable[1][i] = new FixedLabel("0");
+                this.playersTable[1][i].setFont(new Font("Serif", Font.PLAIN, playerFontSize));
                 this.playersTable[1][i].setHorizontalAlignment(JLabel.CENTER);
+                this.playersTable[1][i].setPreferredSize(new Dimension(playerCellWidth, playerCellHeight));
                 this.add(playersTable[1][i]);
             }
         }
 
+        private void render(ViewModel view) {
+            for (int player = 0; player < config.players; player++) {
+                long freeze = view.freezes[player] > 0 ? view.freezes[player] / 1000 : -1;
+                if (freeze != shownFreezes[player]) {
+                    shownFreezes[player] = freeze;
+                    setFreeze(player, view.freezes[player]);
+                }
+                if (view.scores[player] != shownScores[player]) {
+                    shownScores[player] = view.scores[player];
+                    playersTable[1][player].setText(Integer.toString(view.scores[player]));
+                }
+            }
+        }
+
         private void setFreeze(int player, long millies) {
             if (millies > 0) {
                 this.playersTable[0][player].setText(config.playerNames[player] + " (" + millies / 1000 + ")");
@@ -244,26 +587,41 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
                 this.playersTable[0][player].setForeground(Color.BLACK);
             }
         }
-
-        private void setScore(int player, int score) {
-            playersTable[1][player].setText(Integer.toString(score));
-        }
     }
 
     private class WinnerPanel extends JPanel {
 
         private final JLabel winnerAnnouncement;
 
+        /**
+         * The winners currently announced (null if none).
+         */
+        private int[] shownWinners;
+
         public WinnerPanel() {
             this.setVisible(false);
 
             this.winnerAnnouncement = new JLabel();
             this.winnerAnnouncement.setFont(new Font("Serif", Font.BOLD, config.fontSize));
             this.winnerAnnouncement.setHorizontalAlignment(JLabel.CENTER);
-            this.winnerAnnouncement.setSize(config.cellWidth, config.cellHeight);
+            this.winnerAnnouncement.setSize(cellWidth, cellHeight);
             add(winnerAnnouncement);
         }
 
+        private void render(ViewModel view) {
+            if (view.winners == shownWinners) return;
+            shownWinners = view.winners;
+            if (view.winners != null) {
+                playersPanel.setVisible(false);
+                announceWinner(view.winners);
+                setVisible(true);
+            } else {
+                setVisible(false);
+                timerPanel.setVisible(true);
+                playersPanel.setVisible(true);
+            }
+        }
+
         private void announceWinner(int[] players) {
             String text;
             List<String> names = Arrays.stream(players).mapToObj(id -> config.playerNames[id]).collect(Collectors.toList());
@@ -276,63 +634,180 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
 
     @Override
     public void placeCard(int card, int slot) {
-        gamePanel.placeCard(slot, card);
+        viewLock.lock();
+        try {
+            model.cards[slot] = card;
+            model.version++;
+        } finally {
+            viewLock.unlock();
+        }
     }
 
     @Override
     public void removeCard(int slot) {
-        gamePanel.removeCard(slot);
+        viewLock.lock();
+        try {
+            model.cards[slot] = -1;
+            model.version++;
+        } finally {
+            viewLock.unlock();
+        }
+    }
+
+    @Override
+    public void placeCards(int[] cards, int[] slots) {
+        viewLock.lock();
+        try {
+            for (int i = 0; i < slots.length; i++)
+                model.cards[slots[i]] = cards[i];
+            model.version++;
+        } finally {
+            viewLock.unlock();
+        }
+    }
+
+    @Override
+    public void removeCards(int[] slots) {
+        viewLock.lock();
+        try {
+            for (int slot : slots) {
+                model.cards[slot] = -1;
+                model.clearTokens(slot);
+            }
+            model.version++;
+        } finally {
+            viewLock.unlock();
+        }
     }
 
     @Override
     public void placeToken(int player, int slot) {
-        gamePanel.placeToken(player, slot);
+        viewLock.lock();
+        try {
+            model.setToken(player, slot, true);
+            model.version++;
+        } finally {
+            viewLock.unlock();
+        }
     }
 
     @Override
     public void removeTokens() {
-        gamePanel.removeTokens();
+        viewLock.lock();
+        try {
+            Arrays.fill(model.tokens, 0L);
+            model.version++;
+        } finally {
+            viewLock.unlock();
+        }
     }
 
     @Override
     public void removeTokens(int slot) {
-        gamePanel.removeTokens(slot);
+        viewLock.lock();
+        try {
+            model.clearTokens(slot);
+            model.version++;
+        } finally {
+            viewLock.unlock();
+        }
     }
 
     @Override
     public void removeToken(int player, int slot) {
-        gamePanel.removeToken(player, slot);
+        viewLock.lock();
+        try {
+            model.setToken(player, slot, false);
+            model.version++;
+        } finally {
+            viewLock.unlock();
+        }
     }
 
     @Override
     public void setCountdown(long millies, boolean warn) {
-        timerPanel.setCountdown(millies, warn);
+        viewLock.lock();
+        try {
+            model.timerMillies = Math.max(0, millies);
+            model.warn = warn;
+            model.elapsed = false;
+            model.version++;
+        } finally {
+            viewLock.unlock();
+        }
     }
 
     @Override
     public void setElapsed(long millies) {
-        timerPanel.setElapsed(millies);
+        viewLock.lock();
+        try {
+            model.timerMillies = Math.max(0, millies);
+            model.warn = false;
+            model.elapsed = true;
+            model.version++;
+        } finally {
+            viewLock.unlock();
+        }
     }
 
     @Override
     public void setFreeze(int player, long millies) {
-        playersPanel.setFreeze(player, millies);
+        viewLock.lock();
+        try {
+            model.freezes[player] = millies;
+            model.version++;
+        } finally {
+            viewLock.unlock();
+        }
     }
 
     @Override
     public void setScore(int player, int score) {
-        playersPanel.setScore(player, score);
+        viewLock.lock();
+        try {
+            model.scores[player] = score;
+            model.version++;
+        } finally {
+            viewLock.unlock();
+        }
     }
 
     @Override
     public void announceWinner(int[] players) {
-        playersPanel.setVisible(false);
-        winnerPanel.announceWinner(players);
-        winnerPanel.setVisible(true);
+        viewLock.lock();
+        try {
+            model.winners = players.clone();
+            model.version++;
+        } finally {
+            viewLock.unlock();
+        }
+    }
+
+    @Override
+    public void awaitAnimations() {
+        // cards are displayed as soon as they are placed
+    }
+
+    @Override
+    public void reset() {
+        viewLock.lock();
+        try {
+            Arrays.fill(model.cards, -1);
+            Arrays.fill(model.tokens, 0L);
+            Arrays.fill(model.scores, 0);
+            Arrays.fill(model.freezes, 0);
+            model.winners = null;
+            model.version++;
+        } finally {
+            viewLock.unlock();
+        }
     }
 
     @Override
     public void dispose() {
+        renderTimer.stop();
+        if (cacheReleased.compareAndSet(false, true))
+            CardImages.release(config.imageCacheSize);
         super.dispose();
     }
 }
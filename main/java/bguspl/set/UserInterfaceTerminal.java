@@ -0,0 +1,446 @@
+package bguspl.set;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+/**
+ * A UserInterface that draws the game in a text terminal using ANSI escape codes, for machines without a display.
+ * <p>
+ * The game threads only update the state and a render thread redraws the screen at most FrameRate times per second.
+ * The screen is composed into a back buffer that is compared with a shadow of what the terminal already shows, and
+ * only the characters that differ are written, so the output does not grow with the number of game events.
+ */
+public class UserInterfaceTerminal implements UserInterface {
+
+    private static final String ESC = "\u001B[";
+
+    /**
+     * The ANSI foreground colours of the card colours (cycled for decks with more colours).
+     */
+    private static final byte[] CARD_COLORS = {31, 32, 35, 34, 33, 36};
+    private static final byte DEFAULT = 0;
+    private static final byte RED = 31;
+    private static final byte YELLOW = 33;
+
+    private final Logger logger;
+    private final Config config;
+    private final Util util;
+    private final PrintStream out;
+
+    /**
+     * The game state (guarded by lock).
+     */
+    private final int[] cards;
+    private final long[] tokens;
+    private final int tokenWords;
+    private final int[] scores;
+    private final long[] freezes;
+    private long timerMillies = -1;
+    private boolean warn;
+    private boolean elapsed;
+    private int[] winners;
+    private long version;
+    private final Lock lock = new ReentrantLock();
+
+    /**
+     * The screen layout: each slot is a cell of cellWidth characters and 3 lines (card, tokens and a gap).
+     */
+    private final int cellWidth;
+    private final int width;
+    private final int height;
+    private final int tableTop = 2;
+    private final int playersTop;
+
+    /**
+     * The screen being composed and the shadow of the screen the terminal shows (used by the render thread only).
+     */
+    private final char[] back;
+    private final byte[] backColors;
+    private final char[] front;
+    private final byte[] frontColors;
+    private final StringBuilder output = new StringBuilder();
+
+    /**
+     * The digits of each card, computed on first use.
+     */
+    private final char[][] cardLabels;
+
+    private final Thread renderThread;
+    private volatile boolean terminate;
+
+    public UserInterfaceTerminal(Logger logger, Config config) {
+        this(logger, config, System.out);
+    }
+
+    public UserInterfaceTerminal(Logger logger, Config config, PrintStream out) {
+        this.logger = logger;
+        this.config = config;
+        this.util = new UtilImpl(config);
+        this.out = out;
+
+        cards = new int[config.tableSize];
+        Arrays.fill(cards, -1);
+        tokenWords = (config.players + 63) >>> 6;
+        tokens = new long[config.tableSize * tokenWords];
+        scores = new int[config.players];
+        freezes = new long[config.players];
+        cardLabels = new char[config.deckSize][];
+
+        cellWidth = Math.max(config.featureCount, Math.min(config.players, 12)) + 3;
+        int nameWidth = Arrays.stream(config.playerNames).mapToInt(String::length).max().orElse(0);
+        width = Math.max(Math.max(config.columns * cellWidth, nameWidth + 24), 40);
+        playersTop = tableTop + config.rows * 3;
+        height = playersTop + config.players + 2;
+
+        back = new char[width * height];
+        backColors = new byte[width * height];
+        front = new char[width * height];
+        frontColors = new byte[width * height];
+        Arrays.fill(front, ' ');
+
+        if (config.humanPlayers > 0)
+            logger.warning("the terminal user interface has no keyboard input for human players");
+
+        // clear the screen and hide the cursor
+        out.print(ESC + "2J" + ESC + "H" + ESC + "?25l");
+        out.flush();
+
+        renderThread = new Thread(this::renderLoop, "terminal-ui");
+        renderThread.setDaemon(true);
+        renderThread.start();
+    }
+
+    private void renderLoop() {
+        long frameMillis = 1000 / Math.max(1, config.frameRate);
+        long shownVersion = -1;
+        while (!terminate) {
+            lock.lock();
+            try {
+                if (version != shownVersion) {
+                    shownVersion = version;
+                    compose();
+                }
+            } finally {
+                lock.unlock();
+            }
+            flushChanges();
+            try {
+                Thread.sleep(frameMillis);
+            } catch (InterruptedException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Draws the whole state into the back buffer (called while holding the lock).
+     */
+    private void compose() {
+        Arrays.fill(back, ' ');
+        Arrays.fill(backColors, DEFAULT);
+
+        if (elapsed) put(0, 0, "Elapsed time: " + timerMillies / 1000, DEFAULT);
+        else if (timerMillies >= 0) {
+            String seconds = warn ? String.format("%.2f", timerMillies / 1000.0) : Long.toString(timerMillies / 1000);
+            put(0, 0, "Remaining Time: " + seconds, warn ? RED : DEFAULT);
+        } else put(0, 0, config.turnTimeoutMillis < 0 ? "PLAY" : "GET READY...", DEFAULT);
+
+        for (int slot = 0; slot < config.tableSize; slot++) {
+            int row = tableTop + slot / config.columns * 3;
+            int column = slot % config.columns * cellWidth;
+            if (cards[slot] < 0) {
+                put(row, column, "[", DEFAULT);
+                put(row, column + config.featureCount + 1, "]", DEFAULT);
+            } else {
+                put(row, column, "[", DEFAULT);
+                put(row, column + 1, cardLabel(cards[slot]), cardColor(cards[slot]));
+                put(row, column + config.featureCount + 1, "]", DEFAULT);
+            }
+            composeTokens(slot, row + 1, column);
+        }
+
+        for (int player = 0; player < config.players; player++) {
+            int row = playersTop + player;
+            put(row, 0, config.playerNames[player], freezes[player] > 0 ? RED : DEFAULT);
+            put(row, width - 18, "score " + scores[player], DEFAULT);
+            if (freezes[player] > 0) put(row, width - 8, "(" + freezes[player] / 1000 + ")", RED);
+        }
+
+        if (winners != null) {
+            StringBuilder text = new StringBuilder(winners.length == 1 ? "THE WINNER IS: " : "IT IS A DRAW: ");
+            for (int i = 0; i < winners.length; i++)
+                text.append(i > 0 ? " AND " : "").append(config.playerNames[winners[i]]);
+            put(height - 1, 0, text.append(winners.length == 1 ? "!!!" : " WON!!!"), YELLOW);
+        }
+    }
+
+    /**
+     * Writes one character per player with a token on the slot (the player id in base 36), or a '+' if they do not
+     * fit in the cell.
+     */
+    private void composeTokens(int slot, int row, int column) {
+        int limit = column + cellWidth - 2, x = column;
+        for (int word = 0; word < tokenWords; word++) {
+            for (long bits = tokens[slot * tokenWords + word]; bits != 0; bits &= bits - 1) {
+                int player = (word << 6) + Long.numberOfTrailingZeros(bits);
+                if (x == limit) {
+                    back[row * width + x - 1] = '+';
+                    return;
+                }
+                back[row * width + x++] = Character.forDigit(player % 36, 36);
+            }
+        }
+    }
+
+    private char[] cardLabel(int card) {
+        char[] label = cardLabels[card];
+        if (label == null) {
+            int[] features = util.cardToFeatures(card);
+            label = new char[features.length];
+            for (int i = 0; i < features.length; i++)
+                label[i] = features[i] < 36 ? Character.forDigit(features[i], 36) : '*';
+            cardLabels[card] = label;
+        }
+        return label;
+    }
+
+    private byte cardColor(int card) {
+        if (config.featureCount < 2) return DEFAULT;
+        return CARD_COLORS[cardLabelValue(cardLabel(card)[1]) % CARD_COLORS.length];
+    }
+
+    private static int cardLabelValue(char digit) {
+        return Math.max(0, Character.digit(digit, 36));
+    }
+
+    private void put(int row, int column, CharSequence text, byte color) {
+        for (int i = 0; i < text.length() && column + i < width; i++) {
+            back[row * width + column + i] = text.charAt(i);
+            backColors[row * width + column + i] = color;
+        }
+    }
+
+    private void put(int row, int column, char[] text, byte color) {
+        for (int i = 0; i < text.length && column + i < width; i++) {
+            back[row * width + column + i] = text[i];
+            backColors[row * width + column + i] = color;
+        }
+    }
+
+    /**
+     * Writes the characters of the back buffer that differ from the shadow buffer and updates the shadow buffer.
+     */
+    private void flushChanges() {
+        output.setLength(0);
+        int cursor = -1;
+        byte color = -1;
+        for (int i = 0; i < back.length; i++) {
+            if (back[i] == front[i] && backColors[i] == frontColors[i]) continue;
+            if (i != cursor)
+                output.append(ESC).append(i / width + 1).append(';').append(i % width + 1).append('H');
+            if (backColors[i] != color) {
+                color = backColors[i];
+                output.append(ESC).append(color).append('m');
+            }
+            output.append(back[i]);
+            front[i] = back[i];
+            frontColors[i] = backColors[i];
+            cursor = i + 1;
+        }
+        if (output.length() == 0) return;
+        output.append(ESC).append("0m");
+        out.append(output);
+        out.flush();
+    }
+
+    private void changed() {
+        version++;
+    }
+
+    @Override
+    public void placeCard(int card, int slot) {
+        placeCards(new int[]{card}, new int[]{slot});
+    }
+
+    @Override
+    public void removeCard(int slot) {
+        removeCards(new int[]{slot});
+    }
+
+    @Override
+    public void placeCards(int[] cards, int[] slots) {
+        lock.lock();
+        try {
+            for (int i = 0; i < slots.length; i++)
+                this.cards[slots[i]] = cards[i];
+            changed();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void removeCards(int[] slots) {
+        lock.lock();
+        try {
+            for (int slot : slots) {
+                cards[slot] = -1;
+                Arrays.fill(tokens, slot * tokenWords, (slot + 1) * tokenWords, 0L);
+            }
+            changed();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void placeToken(int player, int slot) {
+        lock.lock();
+        try {
+            tokens[slot * tokenWords + (player >>> 6)] |= 1L << player;
+            changed();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void removeTokens() {
+        lock.lock();
+        try {
+            Arrays.fill(tokens, 0L);
+            changed();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void removeTokens(int slot) {
+        lock.lock();
+        try {
+            Arrays.fill(tokens, slot * tokenWords, (slot + 1) * tokenWords, 0L);
+            changed();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void removeToken(int player, int slot) {
+        lock.lock();
+        try {
+            tokens[slot * tokenWords + (player >>> 6)] &= ~(1L << player);
+            changed();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void setCountdown(long millies, boolean warn) {
+        lock.lock();
+        try {
+            // without the warning only whole seconds are shown, so skip updates that would not change the screen
+            long shown = warn ? millies / 10 : millies / 1000;
+            if (!elapsed && warn == this.warn && shown == (warn ? timerMillies / 10 : timerMillies / 1000)) return;
+            timerMillies = Math.max(0, millies);
+            this.warn = warn;
+            elapsed = false;
+            changed();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void setElapsed(long millies) {
+        lock.lock();
+        try {
+            if (elapsed && millies / 1000 == timerMillies / 1000) return;
+            timerMillies = Math.max(0, millies);
+            warn = false;
+            elapsed = true;
+            changed();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void setFreeze(int player, long millies) {
+        lock.lock();
+        try {
+            freezes[player] = millies;
+            changed();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void setScore(int player, int score) {
+        lock.lock();
+        try {
+            scores[player] = score;
+            changed();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void announceWinner(int[] players) {
+        lock.lock();
+        try {
+            winners = players.clone();
+            changed();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void awaitAnimations() {
+        // cards are displayed as soon as they are placed
+    }
+
+    @Override
+    public void reset() {
+        lock.lock();
+        try {
+            Arrays.fill(cards, -1);
+            Arrays.fill(tokens, 0L);
+            Arrays.fill(scores, 0);
+            Arrays.fill(freezes, 0);
+            winners = null;
+            changed();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void dispose() {
+        terminate = true;
+        renderThread.interrupt();
+        try {
+            renderThread.join();
+        } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+        }
+        // show the final state, then move below the screen and show the cursor again
+        lock.lock();
+        try {
+            compose();
+        } finally {
+            lock.unlock();
+        }
+        flushChanges();
+        out.print(ESC + (height + 1) + ";1H" + ESC + "?25h");
+        out.flush();
+        logger.info("terminal user interface disposed");
+    }
+}
@@ -31,6 +31,15 @@ public interface Util {
      */
     boolean testSet(int[] cards);
 
+    /**
+     * Finds the card that completes the given cards to a legal set (without allocating memory).
+     *
+     * @param cards  - an array of card ids.
+     * @param length - the number of cards to use from the start of the array (must be config.featureSize - 1).
+     * @return - the id of the completing card, or -1 if no card completes the given cards to a legal set.
+     */
+    int completeSet(int[] cards, int length);
+
     /**
      * Finds and returns up to count sets in the given collection of cards.
      *
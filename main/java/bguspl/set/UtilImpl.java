@@ -13,8 +13,20 @@ public class UtilImpl implements Util {
 
     private final Config config;
 
+    /**
+     * The place value of each feature in a card id (i.e. featureSize ^ (featureCount - 1 - feature)).
+     */
+    private final int[] featureWeights;
+
     public UtilImpl(Config config) {
         this.config = config;
+        featureWeights = new int[config.featureCount];
+        for (int i = config.featureCount - 1, weight = 1; i >= 0; --i, weight *= config.featureSize)
+            featureWeights[i] = weight;
+    }
+
+    private int feature(int card, int feature) {
+        return card / featureWeights[feature] % config.featureSize;
     }
 
     private void cardToFeatures(int card, int[] features) {
@@ -40,33 +52,71 @@ public class UtilImpl implements Util {
 
     @Override
     public boolean testSet(int[] cards) {
-        int[][] features = cardsToFeatures(Arrays.copyOf(cards, cards.length));
+        if (cards.length == 0) return config.featureCount == 0;
         for (int i = 0; i < config.featureCount; ++i) {
             boolean sameSame = true, butDifferent = true;
 
             // check if this features is sameSame in all cards
-            for (int j = 1; j < features.length; ++j)
-                if (features[0][i] != features[j][i]) {
+            int first = feature(cards[0], i);
+            for (int j = 1; j < cards.length; ++j)
+                if (feature(cards[j], i) != first) {
                     sameSame = false;
                     break;
                 }
 
             // check if this feature is butDifferent in all cards
-            for (int j = 1; j < features.length; ++j)
-                for (int k = j; k < features.length; ++k)
-                    if (features[j - 1][i] == features[k][i]) {
+            for (int j = 0; j < cards.length - 1 && butDifferent; ++j) {
+                int value = feature(cards[j], i);
+                for (int k = j + 1; k < cards.length; ++k)
+                    if (value == feature(cards[k], i)) {
                         butDifferent = false;
                         break;
                     }
+            }
 
             if (sameSame == butDifferent) return false;
         }
         return true;
     }
 
+    @Override
+    public int completeSet(int[] cards, int length) {
+        if (length < 2 || length != config.featureSize - 1) return -1;
+        int card = 0;
+        for (int i = 0; i < config.featureCount; ++i) {
+            int first = feature(cards[0], i), sum = first, seen = 1 << first;
+            boolean sameSame = true;
+            for (int j = 1; j < length; ++j) {
+                int value = feature(cards[j], i);
+                if (value != first) sameSame = false;
+                sum += value;
+                seen |= 1 << value;
+            }
+
+            // the missing value is either the common one or the only one not used yet
+            if (sameSame) card += first * featureWeights[i];
+            else if (Integer.bitCount(seen) == length)
+                card += (config.featureSize * (config.featureSize - 1) / 2 - sum) * featureWeights[i];
+            else return -1;
+        }
+        return card;
+    }
+
     @Override
     public List<int[]> findSets(List<Integer> deck, int count) {
-        LinkedList<int[]> sets = new LinkedList<>();
+        GameEvents.FindSets event = new GameEvents.FindSets();
+        event.begin();
+        List<int[]> sets = findSets(deck, count, new LinkedList<>());
+        if (event.shouldCommit()) {
+            event.inputSize = deck.size();
+            event.limit = count;
+            event.results = sets.size();
+            event.commit();
+        }
+        return sets;
+    }
+
+    private List<int[]> findSets(List<Integer> deck, int count, LinkedList<int[]> sets) {
         int n = deck.size();
         int r = config.featureSize;
         int[] combination = new int[r];
@@ -0,0 +1,239 @@
+package bguspl.set;
+
+import java.lang.management.LockInfo;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MonitorInfo;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Watches the heartbeats of the game loops (the dealer and the players) of the process.
+ * <p>
+ * A loop beats as it makes progress, and announces its bounded waits (e.g. the dealer waiting up to 50 ms for a
+ * claim), so the lag between the time it should have woken up and the time it did is measured. Unbounded waits for
+ * other threads (e.g. a player waiting for a key) are announced as idle. A loop that neither beats nor wakes up for
+ * the stall threshold is reported once, with a dump of all the threads and the owners of the locks they wait for.
+ */
+public class Watchdog {
+
+    private static final Watchdog watchdog = new Watchdog();
+
+    /**
+     * @return - the watchdog of the process.
+     */
+    public static Watchdog get() {
+        return watchdog;
+    }
+
+    private static final long NOT_WAITING = Long.MIN_VALUE;
+
+    /**
+     * The heartbeat of a loop, updated by the thread of the loop.
+     */
+    public class Heartbeat {
+        private final String kind;
+        private final String name;
+        private final long stallNanos;
+        private final Logger logger;
+
+        private volatile Thread thread;
+        private volatile boolean idle = true;
+        private volatile long lastBeat;
+        private volatile long wakeTime = NOT_WAITING;
+        private volatile long maxLag;
+        private volatile boolean reported;
+
+        private Heartbeat(String kind, String name, long stallMillis, Logger logger) {
+            this.kind = kind;
+            this.name = name;
+            this.stallNanos = stallMillis * 1_000_000L;
+            this.logger = logger;
+        }
+
+        /**
+         * Called by the loop thread when it starts (or resumes) running.
+         */
+        public void start() {
+            if (stallNanos <= 0) return;
+            thread = Thread.currentThread();
+            beat();
+            ensureStarted();
+        }
+
+        /**
+         * Called by the loop thread when it makes progress.
+         */
+        public void beat() {
+            if (stallNanos <= 0) return;
+            lastBeat = System.nanoTime();
+            idle = false;
+            reported = false;
+        }
+
+        /**
+         * Called by the loop thread before a wait that should end within the given time.
+         */
+        public void await(long millis) {
+            if (stallNanos <= 0) return;
+            beat();
+            wakeTime = lastBeat + millis * 1_000_000L;
+        }
+
+        /**
+         * Called by the loop thread after a wait announced by await, to measure how late it woke up.
+         */
+        public void awake() {
+            if (stallNanos <= 0) return;
+            long expected = wakeTime;
+            wakeTime = NOT_WAITING;
+            beat();
+            long lag = lastBeat - expected;
+            if (expected != NOT_WAITING && lag > maxLag) maxLag = lag;
+        }
+
+        /**
+         * Called by the loop thread before it waits for other threads with no time limit.
+         */
+        public void idle() {
+            if (stallNanos <= 0) return;
+            wakeTime = NOT_WAITING;
+            idle = true;
+        }
+
+        /**
+         * Stops watching the loop.
+         */
+        public void close() {
+            heartbeats.remove(this);
+        }
+
+        /**
+         * @return - the time the loop has not made progress for (0 if it is idle or not late).
+         */
+        private long stalledFor(long now) {
+            if (idle || thread == null) return 0;
+            long wake = wakeTime;
+            long due = wake != NOT_WAITING ? Math.max(lastBeat, wake) : lastBeat;
+            return Math.max(0, now - due);
+        }
+    }
+
+    private final Set<Heartbeat> heartbeats = ConcurrentHashMap.newKeySet();
+
+    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+    private final Map<String, Metrics.Counter> stalls = new ConcurrentHashMap<>();
+    private final Map<String, Metrics.Gauge> maxLags = new ConcurrentHashMap<>();
+
+    /**
+     * The maximum lag of each kind of loop last added to its gauge (only used by the watchdog thread).
+     */
+    private final Map<String, Long> reportedLags = new HashMap<>();
+
+    private Thread thread;
+
+    private Watchdog() {
+    }
+
+    /**
+     * Watches a loop.
+     *
+     * @param kind        - the kind of loop (e.g. dealer), which labels its metrics.
+     * @param name        - the name of the loop, for the reports.
+     * @param stallMillis - the time without progress after which the loop is reported as stalled (0 to not watch).
+     * @param logger      - the logger to report to.
+     * @return - the heartbeat of the loop.
+     */
+    public Heartbeat register(String kind, String name, long stallMillis, Logger logger) {
+        Heartbeat heartbeat = new Heartbeat(kind, name, stallMillis, logger);
+        if (stallMillis <= 0) return heartbeat;
+        stalls.computeIfAbsent(kind, k -> Metrics.registry().counter("set_watchdog_stalls_total",
+                "Game loops that made no progress for the stall threshold.", "loop", k));
+        maxLags.computeIfAbsent(kind, k -> Metrics.registry().gauge("set_loop_lag_max_microseconds",
+                "The latest a game loop woke up after a timed wait.", "loop", k));
+        heartbeats.add(heartbeat);
+        return heartbeat;
+    }
+
+    private synchronized void ensureStarted() {
+        if (thread != null) return;
+        thread = new Thread(this::watch, "watchdog");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void watch() {
+        while (true) {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long now = System.nanoTime();
+            Map<String, Long> lags = new HashMap<>();
+            for (Heartbeat heartbeat : heartbeats) {
+                lags.merge(heartbeat.kind, heartbeat.maxLag, Math::max);
+                long stalledFor = heartbeat.stalledFor(now);
+                if (stalledFor < heartbeat.stallNanos || heartbeat.reported) continue;
+                heartbeat.reported = true;
+                stalls.get(heartbeat.kind).inc();
+                heartbeat.logger.severe("watchdog: " + heartbeat.name + " made no progress for "
+                        + stalledFor / 1_000_000L + " ms." + System.lineSeparator() + dump(heartbeat.thread));
+            }
+            for (Map.Entry<String, Long> lag : lags.entrySet()) {
+                long micros = lag.getValue() / 1000;
+                long reported = reportedLags.getOrDefault(lag.getKey(), 0L);
+                if (micros <= reported) continue;
+                maxLags.get(lag.getKey()).add(micros - reported);
+                reportedLags.put(lag.getKey(), micros);
+            }
+        }
+    }
+
+    /**
+     * @param stalled - the stalled thread (dumped first).
+     * @return - the stacks of all the threads, with the locks they hold and wait for, as text.
+     */
+    public String dump(Thread stalled) {
+        ThreadInfo[] threads = threadBean.dumpAllThreads(threadBean.isObjectMonitorUsageSupported(),
+                threadBean.isSynchronizerUsageSupported());
+        StringBuilder dump = new StringBuilder();
+        long[] deadlocked = threadBean.findDeadlockedThreads();
+        if (deadlocked != null) {
+            dump.append("deadlocked threads:");
+            for (long id : deadlocked)
+                dump.append(' ').append(id);
+            dump.append(System.lineSeparator());
+        }
+        for (ThreadInfo info : threads)
+            if (info.getThreadId() == stalled.getId()) append(dump, info);
+        for (ThreadInfo info : threads)
+            if (info.getThreadId() != stalled.getId()) append(dump, info);
+        return dump.toString();
+    }
+
+    private static void append(StringBuilder dump, ThreadInfo info) {
+        String newLine = System.lineSeparator();
+        dump.append('"').append(info.getThreadName()).append("\" id=").append(info.getThreadId()).append(' ')
+                .append(info.getThreadState());
+        if (info.getLockName() != null) dump.append(" on ").append(info.getLockName());
+        if (info.getLockOwnerName() != null)
+            dump.append(" owned by \"").append(info.getLockOwnerName()).append("\" id=").append(info.getLockOwnerId());
+        dump.append(newLine);
+        StackTraceElement[] stack = info.getStackTrace();
+        MonitorInfo[] monitors = info.getLockedMonitors();
+        for (int i = 0; i < stack.length; i++) {
+            dump.append("\tat ").append(stack[i]).append(newLine);
+            for (MonitorInfo monitor : monitors)
+                if (monitor.getLockedStackDepth() == i) dump.append("\t- locked ").append(monitor).append(newLine);
+        }
+        for (LockInfo lock : info.getLockedSynchronizers())
+            dump.append("\t- holds ").append(lock).append(newLine);
+        dump.append(newLine);
+    }
+}
@@ -0,0 +1,165 @@
+package bguspl.set.ex;
+
+import bguspl.set.LatencyHistogram;
+
+/**
+ * The latencies of the players' set claims, from the third token until the verdict is displayed, per stage and per
+ * player (and overall).
+ * <p>
+ * Each player has at most one claim in progress. Its timestamps are written by the thread that handles the claim at
+ * each stage, and are handed between the threads together with the claim (through the dealer's queue and the
+ * player's lock), so they need no synchronization of their own.
+ */
+public class ClaimLatencies {
+
+    /**
+     * The stages of a claim.
+     */
+    public enum Stage {
+        /** From the third token until the claim is in the dealer's queue. */
+        ENQUEUE("token -> queued"),
+        /** From the dealer's queue until the dealer takes the claim. */
+        QUEUE("queued -> dequeued"),
+        /** From the dealer taking the claim until its verdict. */
+        CHECK("dequeued -> verdict"),
+        /** From the verdict until the player thread wakes up with it. */
+        NOTIFY("verdict -> player"),
+        /** From the player waking up until the score or freeze is sent to the user interface. */
+        DISPLAY("player -> ui"),
+        /** From the third token until the user interface update. */
+        TOTAL("token -> ui");
+
+        public final String description;
+
+        Stage(String description) {
+            this.description = description;
+        }
+    }
+
+    private static final int CLAIMED = 0;
+    private static final int ENQUEUED = 1;
+    private static final int DEQUEUED = 2;
+    private static final int VERDICT = 3;
+    private static final int DELIVERED = 4;
+
+    /**
+     * The timestamps (System.nanoTime) of the claim in progress of each player ([player][point]).
+     */
+    private final long[][] times;
+
+    private final LatencyHistogram[][] perPlayer;
+    private final LatencyHistogram[] overall;
+
+    public ClaimLatencies(int players) {
+        times = new long[players][DELIVERED + 1];
+        perPlayer = new LatencyHistogram[Stage.values().length][players];
+        overall = new LatencyHistogram[Stage.values().length];
+        for (Stage stage : Stage.values()) {
+            overall[stage.ordinal()] = new LatencyHistogram();
+            for (int player = 0; player < players; player++)
+                perPlayer[stage.ordinal()][player] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Called when the player places the third token of a claim.
+     */
+    void claimed(int player) {
+        times[player][CLAIMED] = System.nanoTime();
+        times[player][VERDICT] = 0;
+    }
+
+    /**
+     * Called when the claim is added to the dealer's queue.
+     */
+    void enqueued(int player) {
+        times[player][ENQUEUED] = System.nanoTime();
+    }
+
+    /**
+     * Called when the dealer takes the claim from the queue.
+     */
+    void dequeued(int player) {
+        times[player][DEQUEUED] = System.nanoTime();
+    }
+
+    /**
+     * Called by the dealer just before the verdict (a point or a penalty) is signalled to the player.
+     */
+    void verdict(int player) {
+        times[player][VERDICT] = System.nanoTime();
+    }
+
+    /**
+     * Called when the player thread wakes up with the verdict.
+     */
+    void delivered(int player) {
+        times[player][DELIVERED] = System.nanoTime();
+    }
+
+    /**
+     * Called when the verdict was sent to the user interface. Records the claim, unless it got no verdict (e.g. the
+     * cards were reshuffled meanwhile).
+     */
+    void displayed(int player) {
+        long[] claim = times[player];
+        if (claim[VERDICT] == 0) return;
+        long now = System.nanoTime();
+        record(Stage.ENQUEUE, player, claim[ENQUEUED] - claim[CLAIMED]);
+        record(Stage.QUEUE, player, claim[DEQUEUED] - claim[ENQUEUED]);
+        record(Stage.CHECK, player, claim[VERDICT] - claim[DEQUEUED]);
+        record(Stage.NOTIFY, player, claim[DELIVERED] - claim[VERDICT]);
+        record(Stage.DISPLAY, player, now - claim[DELIVERED]);
+        record(Stage.TOTAL, player, now - claim[CLAIMED]);
+        claim[VERDICT] = 0;
+    }
+
+    private void record(Stage stage, int player, long nanos) {
+        perPlayer[stage.ordinal()][player].record(nanos);
+        overall[stage.ordinal()].record(nanos);
+    }
+
+    /**
+     * @return - the latencies of a stage of the claims of a player.
+     */
+    public LatencyHistogram.Snapshot snapshot(Stage stage, int player) {
+        return perPlayer[stage.ordinal()][player].snapshot();
+    }
+
+    /**
+     * @return - the latencies of a stage of the claims of all the players.
+     */
+    public LatencyHistogram.Snapshot snapshot(Stage stage) {
+        return overall[stage.ordinal()].snapshot();
+    }
+
+    /**
+     * Removes all the recorded latencies, for a new game.
+     */
+    public void reset() {
+        for (Stage stage : Stage.values()) {
+            overall[stage.ordinal()].reset();
+            for (LatencyHistogram histogram : perPlayer[stage.ordinal()])
+                histogram.reset();
+        }
+    }
+
+    /**
+     * @param playerNames - the names of the players.
+     * @return - the latencies of all the stages, overall and per player, as text.
+     */
+    public String report(String[] playerNames) {
+        StringBuilder report = new StringBuilder("claim latencies:");
+        for (Stage stage : Stage.values()) {
+            report.append(System.lineSeparator()).append("  ").append(stage.description).append(": ")
+                    .append(snapshot(stage));
+            for (int player = 0; player < perPlayer[stage.ordinal()].length; player++) {
+                LatencyHistogram.Snapshot snapshot = snapshot(stage, player);
+                if (snapshot.count() > 0)
+                    report.append(System.lineSeparator()).append("    ").append(playerNames[player]).append(": ")
+                            .append(snapshot);
+            }
+        }
+        return report.toString();
+    }
+}
@@ -1,8 +1,13 @@
 package bguspl.set.ex;
 
 import bguspl.set.Env;
+import bguspl.set.GameEvents;
+import bguspl.set.Metrics;
+import bguspl.set.ThreadSampler;
+import bguspl.set.Watchdog;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 //import java.util.Currency;
 import java.util.Iterator;
 //import java.util.LinkedList;
@@ -11,6 +16,10 @@ import java.util.List;
 import java.util.Random;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -46,6 +55,53 @@ public class Dealer implements Runnable {
      */
     private long reshuffleTime = Long.MAX_VALUE;
 
+    /**
+     * The time the turn would time out (later than reshuffleTime if the dealer reshuffles early because the table has
+     * no set).
+     */
+    private long turnTimeoutTime = Long.MAX_VALUE;
+
+    /**
+     * True iff cards were placed on or removed from the table since the table was last checked for a set.
+     */
+    private boolean tableChanged;
+
+    /**
+     * The number of milliseconds of turn time skipped by reshuffling tables that had no set.
+     */
+    private long avoidedIdleMillis;
+
+    /**
+     * The number of times the table was reshuffled in the current game (fully or by swapping a single card).
+     */
+    private int reshuffles;
+
+    /**
+     * Room for the cards on the table and for a pair of cards, used to look for a set on the table.
+     */
+    private final int[] tableCardsBuffer;
+    private final int[] pairBuffer = new int[2];
+
+    /**
+     * Picks the cards drawn from the deck and the cards replaced by a minimal reshuffle (used by the dealer thread).
+     */
+    private final Random random = new Random();
+
+    /**
+     * The latencies of the players' claims in the current game.
+     */
+    private final ClaimLatencies claimLatencies;
+
+    /**
+     * The number of legal sets each player claimed in the current game.
+     */
+    private final int[] acceptedClaims;
+
+    /**
+     * Whether each card is in the deck, used to look for a card that completes a set on the table.
+     */
+    private final boolean[] inDeck;
+
     /**
      * the dealer's queue that contains all the sets that are waiting to be checked
      */
@@ -55,7 +111,12 @@ public class Dealer implements Runnable {
      * the dealer's lock
      */
 
-    public Object dealerLock;
+    public final Lock dealerLock;
+
+    /**
+     * signalled when a player adds a set to the dealer's queue
+     */
+    private final Condition requestAdded;
 
     /**
      * The dealer's thread
@@ -64,14 +125,74 @@ public class Dealer implements Runnable {
 
     private boolean activatePlayers;
 
+    /**
+     * True iff the player threads were started (they are reused by the following games).
+     */
+    private boolean playersStarted;
+
+    /**
+     * Room for the empty slots of the table, filled by Table.emptySlots.
+     */
+    private final int[] emptySlotsBuffer;
+
+    /**
+     * The metrics of the dealer (shared by the dealers of all the rooms).
+     */
+    private final Metrics.Counter claimsMetric;
+    private final Metrics.Counter pointsMetric;
+    private final Metrics.Counter penaltiesMetric;
+    private final Metrics.Counter fullReshufflesMetric;
+    private final Metrics.Counter minimalReshufflesMetric;
+    private final Metrics.Gauge queueDepthMetric;
+    private final Metrics.Gauge tableSetsMetric;
+
+    /**
+     * The number of sets on the table last added to tableSetsMetric.
+     */
+    private int tableSets;
+
+    /**
+     * The heartbeat of the dealer loop.
+     */
+    private final Watchdog.Heartbeat heartbeat;
+
+    /**
+     * Measures the cpu time and allocations of the game threads.
+     */
+    private final ThreadSampler threadSampler;
+
+    /**
+     * The number of iterations of the timer loop in the current game, and the bytes the dealer thread allocated in
+     * the game (-1 if unknown).
+     */
+    private long loopIterations;
+    private long allocatedBytes = -1;
+
     public Dealer(Env env, Table table, Player[] players) {
         this.env = env;
         this.table = table;
         this.players = players;
         deck = IntStream.range(0, env.config.deckSize).boxed().collect(Collectors.toList());
         playerRequest = new LinkedBlockingQueue<Integer>();
-        dealerLock = new Object();
+        dealerLock = new ReentrantLock();
+        requestAdded = dealerLock.newCondition();
         activatePlayers = true;
+        emptySlotsBuffer = new int[env.config.tableSize];
+        tableCardsBuffer = new int[env.config.tableSize];
+        inDeck = new boolean[env.config.deckSize];
+        claimLatencies = new ClaimLatencies(players.length);
+        acceptedClaims = new int[players.length];
+
+        Metrics metrics = Metrics.registry();
+        claimsMetric = metrics.counter("set_claims_total", "Sets claimed by the players.");
+        pointsMetric = metrics.counter("set_claim_verdicts_total", "Claims checked by the dealer.", "verdict", "point");
+        penaltiesMetric = metrics.counter("set_claim_verdicts_total", "Claims checked by the dealer.", "verdict", "penalty");
+        fullReshufflesMetric = metrics.counter("set_reshuffles_total", "Reshuffles of the table.", "kind", "full");
+        minimalReshufflesMetric = metrics.counter("set_reshuffles_total", "Reshuffles of the table.", "kind", "minimal");
+        queueDepthMetric = metrics.gauge("set_dealer_queue_depth", "Claims waiting for the dealer.");
+        threadSampler = new ThreadSampler(env.logger, env.config.threadStatsMillis);
+        heartbeat = Watchdog.get().register("dealer", "dealer", env.config.watchdogStallMillis, env.logger);
+        tableSetsMetric = metrics.gauge("set_table_sets", "Legal sets on the table (only counted with MetricsPort).");
     }
 
     /**
@@ -81,18 +202,26 @@ public class Dealer implements Runnable {
     public void run() {
         //dealerThread = Thread.currentThread();
         env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " starting.");
-        for (int i = 0; i < players.length; i++) {
-            Thread player = new Thread(players[i]);
-            player.start();
+        Metrics.registry().registerCurrentThread();
+        threadSampler.addCurrentThread();
+        threadSampler.start();
+        loopIterations = 0;
+        heartbeat.start();
+        if (!playersStarted) {
+            for (int i = 0; i < players.length; i++) {
+                Thread player = env.threadFactory.newThread(players[i]);
+                player.setName("player-" + i);
+                player.start();
+            }
+            playersStarted = true;
         }
         while (!shouldFinish()) {
             placeCardsOnTable();
-            long startTime = System.currentTimeMillis();
-            updateTimerDisplay(false, startTime);
             timerLoop();
             removeAllCardsFromTable();
         }
         announceWinners();
+        heartbeat.idle();
         env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " terminated.");
     }
 
@@ -101,33 +230,112 @@ public class Dealer implements Runnable {
      * not time out.
      */
     private void timerLoop() {
-        long startTime = System.currentTimeMillis();
-        while (!terminate && System.currentTimeMillis() < reshuffleTime) {
+        updateTimerDisplay(true);
+        while (!terminate) {
             sleepUntilWokenOrTimeout();
+            GameEvents.TimerLoop event = new GameEvents.TimerLoop();
+            event.begin();
+            event.claimChecked = !playerRequest.isEmpty();
             if (!playerRequest.isEmpty()){
+                queueDepthMetric.dec();
                 checkSet(playerRequest.poll());
             }
-            updateTimerDisplay(false, startTime);
+            updateTimerDisplay(false);
+            threadSampler.sample();
+            loopIterations++;
             removeCardsFromTable();
             placeCardsOnTable();
+            if (tableChanged && (env.config.adaptiveReshuffle || env.config.metricsPort > 0)) {
+                tableChanged = false;
+                int sets = tableSets(env.config.metricsPort > 0 ? Integer.MAX_VALUE : 1);
+                if (env.config.metricsPort > 0) setTableSetsMetric(sets);
+                if (env.config.adaptiveReshuffle && sets == 0) {
+                    // nobody can score, so do not wait for the turn to time out
+                    reshuffleTime = Math.min(reshuffleTime,
+                            System.currentTimeMillis() + env.config.adaptiveReshuffleGraceMillis);
+                }
+            }
+            event.commit();
         }
     }
 
+    /**
+     * Counts the legal sets on the table.
+     *
+     * @param limit - the number of sets to stop counting at.
+     * @return - the number of legal sets on the table, up to the limit.
+     */
+    private int tableSets(int limit) {
+        int count = 0;
+        for (Integer card : table.slotToCard)
+            if (card != null) tableCardsBuffer[count++] = card;
+        if (env.config.featureSize != 3) {
+            List<Integer> cards = new ArrayList<>(count);
+            for (int i = 0; i < count; i++)
+                cards.add(tableCardsBuffer[i]);
+            return env.util.findSets(cards, limit).size();
+        }
+        // a set is a pair of cards and the card that completes it (counted once, by its two lowest cards)
+        int sets = 0;
+        for (int i = 0; i < count; i++) {
+            pairBuffer[0] = tableCardsBuffer[i];
+            for (int j = i + 1; j < count; j++) {
+                pairBuffer[1] = tableCardsBuffer[j];
+                int third = env.util.completeSet(pairBuffer, 2);
+                if (third > pairBuffer[0] && third > pairBuffer[1] && table.cardToSlot[third] != null
+                        && ++sets == limit) return sets;
+            }
+        }
+        return sets;
+    }
+
+    private void setTableSetsMetric(int sets) {
+        tableSetsMetric.add(sets - tableSets);
+        tableSets = sets;
+    }
+
     /**
      * Called when the game should be terminated due to an external event.
      */
     public void terminate() {
+        heartbeat.close();
          for (Player player : players) {
-            player.getPlayerThread().interrupt();
             player.terminate();
+            Thread playerThread = player.getPlayerThread();
+            if (playerThread == null) continue;
+            playerThread.interrupt();
             try {
-                player.getPlayerThread().join();
+                playerThread.join();
             } catch (InterruptedException ignored) {
             }
         }
         terminate = true;
     }
 
+    /**
+     * Prepares a new game with the same table, players and threads: returns all the cards to the deck and resets the
+     * players' scores and tokens. Must be called after run() returned and before it is called again.
+     */
+    public void reset() {
+        table.reset();
+        env.ui.reset();
+        deck.clear();
+        for (int card = 0; card < env.config.deckSize; card++)
+            deck.add(card);
+        for (Player player : players)
+            player.reset();
+        while (playerRequest.poll() != null)
+            queueDepthMetric.dec();
+        reshuffleTime = Long.MAX_VALUE;
+        turnTimeoutTime = Long.MAX_VALUE;
+        avoidedIdleMillis = 0;
+        reshuffles = 0;
+        claimLatencies.reset();
+        Arrays.fill(acceptedClaims, 0);
+        activatePlayers = true;
+        terminate = false;
+    }
+
     /**
      * Check if the game should be terminated or the game end conditions are met.
      *
@@ -145,16 +353,42 @@ public class Dealer implements Runnable {
     }
 
 
+    /**
+     * Removes a random card from the deck (the last card of the deck takes its place).
+     *
+     * @return - the card that was removed.
+     */
+    private int drawCard() {
+        int index = random.nextInt(deck.size());
+        int last = deck.size() - 1;
+        int card = deck.get(index);
+        deck.set(index, deck.get(last));
+        deck.remove(last);
+        return card;
+    }
+
     /**
      * Check if any cards can be removed from the deck and placed on the table.
      */
     private void placeCardsOnTable() {
             
-        for (int i = 0; i < table.slotToCard.length && deck.size()>0; i++) {
-            if (table.slotToCard[i] == null) {
-                Random random = new Random();
-                table.placeCard(deck.remove(random.nextInt(deck.size())), i);
-            }
+        int emptySlots = table.emptySlots(emptySlotsBuffer);
+        int count = Math.min(emptySlots, deck.size());
+        if (count > 0) {
+            GameEvents.PlaceCards event = new GameEvents.PlaceCards();
+            event.begin();
+            event.cards = count;
+            int[] slots = Arrays.copyOf(emptySlotsBuffer, count);
+            int[] cards = new int[count];
+            for (int i = 0; i < count; i++)
+                cards[i] = drawCard();
+            table.placeCards(cards, slots);
+            tableChanged = true;
+
+            // the new cards count (and the countdown starts) only once they are displayed
+            if (env.config.awaitAnimations)
+                env.ui.awaitAnimations();
+            event.commit();
         }
         if (activatePlayers){
             for(int player=0; player<players.length; player++){
@@ -169,32 +403,37 @@ public class Dealer implements Runnable {
      * purpose.
      */
     private void sleepUntilWokenOrTimeout() {
-        synchronized (dealerLock) {
-            if(playerRequest.isEmpty()) {
-                try {
-                    dealerLock.wait(50);
-                } catch (InterruptedException ignored) {
-                }
-            }
+        heartbeat.await(50);
+        dealerLock.lock();
+        try {
+            if (playerRequest.isEmpty())
+                requestAdded.await(50, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ignored) {
+        } finally {
+            dealerLock.unlock();
+            heartbeat.awake();
         }
     }
 
     /**
      * Reset and/or update the countdown and the countdown display.
      */
-    private void updateTimerDisplay(boolean reset, long startTime) {
-        long timeUntilReshuffle = startTime + env.config.turnTimeoutMillis - System.currentTimeMillis();
-        if (timeUntilReshuffle <= env.config.turnTimeoutWarningMillis) {
-            env.ui.setCountdown(timeUntilReshuffle, true);
-            reset = false;
-        } else {
-            env.ui.setCountdown(timeUntilReshuffle, false);
-            reset = false;
+    private void updateTimerDisplay(boolean reset) {
+        long now = System.currentTimeMillis();
+        if (reset) {
+            turnTimeoutTime = now + env.config.turnTimeoutMillis;
+            reshuffleTime = turnTimeoutTime;
         }
-        if (timeUntilReshuffle <= 0) {
+        long timeUntilReshuffle = turnTimeoutTime - now;
+        env.ui.setCountdown(timeUntilReshuffle, timeUntilReshuffle <= env.config.turnTimeoutWarningMillis);
+        if (now >= reshuffleTime) {
+            if (turnTimeoutTime > now) {
+                avoidedIdleMillis += turnTimeoutTime - now;
+                env.logger.info("table has no set, reshuffling " + (turnTimeoutTime - now) + " ms early.");
+            }
             env.ui.setCountdown(0, true);
             reshuffle();
-            timerLoop();
+            updateTimerDisplay(true);
         }
     }
 
@@ -210,12 +449,15 @@ public class Dealer implements Runnable {
         }
         env.ui.removeTokens();
         //removing all the cards from the table
-        for (int slot = 0; slot < table.slotToCard.length; slot++) {
+        int[] slots = new int[table.countCards()];
+        for (int slot = 0, i = 0; slot < table.slotToCard.length; slot++) {
             if (table.slotToCard[slot] != null) {
                 deck.add(table.slotToCard[slot]);
-                table.removeCard(slot);
+                slots[i++] = slot;
             }
         }
+        if (slots.length > 0)
+            removeCards(slots);
         if (env.util.findSets(deck, 1).isEmpty()){
             terminate = true;
         }
@@ -224,10 +466,94 @@ public class Dealer implements Runnable {
         placeCardsOnTable();
     }
 
+    /**
+     * Changes as few cards as possible so that the table contains a set: finds a pair of cards on the table whose
+     * completing card is in the deck and puts that card on the table, in an empty slot or instead of another card.
+     *
+     * @return - true iff a card was swapped in (false if no card in the deck completes a set on the table).
+     */
+    private boolean swapInSet() {
+        if (env.config.featureSize != 3) return false;
+        Arrays.fill(inDeck, false);
+        for (int card : deck)
+            inDeck[card] = true;
+        int count = 0;
+        for (Integer card : table.slotToCard)
+            if (card != null) tableCardsBuffer[count++] = card;
+        if (count < 2) return false;
+        // a full table of only two cards has no card to replace
+        if (count == 2 && table.emptySlots(emptySlotsBuffer) == 0) return false;
+
+        // start from a random pair, so the same cards are not always kept
+        int offset = random.nextInt(count);
+        for (int i = 0; i < count; i++) {
+            pairBuffer[0] = tableCardsBuffer[(offset + i) % count];
+            for (int j = i + 1; j < count; j++) {
+                pairBuffer[1] = tableCardsBuffer[(offset + j) % count];
+                int third = env.util.completeSet(pairBuffer, 2);
+                if (third < 0 || !inDeck[third]) continue;
+
+                int slot;
+                if (table.emptySlots(emptySlotsBuffer) > 0) {
+                    slot = emptySlotsBuffer[0];
+                } else {
+                    // replace a random card other than the pair
+                    int replaced = -1;
+                    for (int k = 0, skip = random.nextInt(count - 2); replaced < 0; k++) {
+                        int card = tableCardsBuffer[k];
+                        if (card != pairBuffer[0] && card != pairBuffer[1] && skip-- == 0) replaced = card;
+                    }
+                    slot = table.cardToSlot[replaced];
+                    removeCards(new int[]{slot});
+                    deck.add(replaced);
+                }
+                deck.remove(Integer.valueOf(third));
+                table.placeCards(new int[]{third}, new int[]{slot});
+                tableChanged = true;
+                env.logger.info("reshuffled by swapping card " + third + " into slot " + slot + ".");
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes the cards in slots (with the tokens on them) and drops the slots from the players' chosen slots, as a
+     * single change under the table lock, so a player never keeps a slot whose token was removed.
+     *
+     * @param slots - the slots to clear.
+     */
+    private void removeCards(int[] slots) {
+        table.tableLock.lock();
+        try {
+            table.removeCards(slots);
+            forgetEmptySlots();
+        } finally {
+            table.tableLock.unlock();
+        }
+    }
+
+    /**
+     * Drops the slots without cards from the players' chosen slots (called under the table lock).
+     */
+    private void forgetEmptySlots() {
+        for (Player player : players) {
+            boolean changed = false;
+            for (Iterator<Integer> it = player.getQueue().iterator(); it.hasNext(); ) {
+                if (table.slotToCard[it.next()] == null) {
+                    it.remove();
+                    changed = true;
+                }
+            }
+            if (changed) player.checked = false;
+        }
+    }
+
     /**
      * Check who is/are the winner/s and displays them.
      */
     protected int[] announceWinners() {
+        allocatedBytes = threadSampler.allocatedBytes(Thread.currentThread());
                     int highestScore = 0;
         List<Integer> winnerList = new ArrayList<>();
         for (int i = 0; i < players.length; i++) {
@@ -247,17 +573,45 @@ public class Dealer implements Runnable {
             i++;
         }
         env.ui.announceWinner(winnersArray);
+        setTableSetsMetric(0);
+        env.logger.info(claimLatencies.report(env.config.playerNames));
+        env.logger.info(threadSampler.report());
+        if (allocatedBytes >= 0 && loopIterations > 0)
+            env.logger.info("dealer allocated " + allocatedBytes / loopIterations + " bytes per timer loop iteration ("
+                    + loopIterations + " iterations).");
+        if (env.config.adaptiveReshuffle)
+            env.logger.info("reshuffling tables without a set avoided " + avoidedIdleMillis / 1000.0 + " idle seconds.");
         return winnersArray;
     }
 
     /** Reshuffle the cards on the table due to countdown Timeout */
 
     private void reshuffle() {
-        removeAllCardsFromTable();
+        GameEvents.Reshuffle event = new GameEvents.Reshuffle();
+        event.begin();
+        reshuffles++;
+        event.minimal = env.config.minimalReshuffle && swapInSet();
+        if (event.minimal) {
+            minimalReshufflesMetric.inc();
+        } else {
+            fullReshufflesMetric.inc();
+            removeAllCardsFromTable();
+        }
+        event.commit();
     }
 
     private void checkSet(int currentPlayer) {
-        synchronized (players[currentPlayer]) {
+        claimLatencies.dequeued(currentPlayer);
+        GameEvents.CheckSet event = new GameEvents.CheckSet();
+        event.begin();
+        event.player = currentPlayer;
+        players[currentPlayer].playerLock.lock();
+        try {
+            if (players[currentPlayer].getQueue().size() != 3) {
+                // a claim that was sent before the player was reset
+                players[currentPlayer].setFlag(0);
+                return;
+            }
             int[] setToCheck = new int[3];
             boolean slotIsNotNull = true;
             Iterator<Integer> it = players[currentPlayer].getQueue().iterator();
@@ -271,20 +625,55 @@ public class Dealer implements Runnable {
                     table.removeToken(players[currentPlayer], slot);
                     players[currentPlayer].getQueue().remove(slot);
                     players[currentPlayer].checked = false;
+                    players[currentPlayer].setFlag(0);
                     slotIsNotNull = false;
                 }
             }
             if (slotIsNotNull) {
                 boolean legalSet = env.util.testSet(setToCheck);
                 if (legalSet) {
-                    table.removeSet(players[currentPlayer], deck);
+                    // the other players' tokens on the set are removed with it
+                    table.tableLock.lock();
+                    try {
+                        table.removeSet(players[currentPlayer], deck);
+                        forgetEmptySlots();
+                    } finally {
+                        table.tableLock.unlock();
+                    }
+                    tableChanged = true;
+                    claimLatencies.verdict(currentPlayer);
+                    acceptedClaims[currentPlayer]++;
                     players[currentPlayer].setFlag(1);
+                    pointsMetric.inc();
+                    event.verdict = 1;
                 } else {
+                    claimLatencies.verdict(currentPlayer);
                     players[currentPlayer].setFlag(-1);
+                    penaltiesMetric.inc();
+                    event.verdict = -1;
                 }
             }
-            players[currentPlayer].notify();
+        } finally {
+            players[currentPlayer].playerLock.unlock();
+            event.commit();
+        }
+    }
 
+    /**
+     * Adds a player's set to the dealer's queue and wakes the dealer up to check it.
+     *
+     * @param player - the id of the player that claims a set.
+     */
+    public void requestCheck(int player) {
+        dealerLock.lock();
+        try {
+            claimLatencies.enqueued(player);
+            playerRequest.add(player);
+            claimsMetric.inc();
+            queueDepthMetric.inc();
+            requestAdded.signalAll();
+        } finally {
+            dealerLock.unlock();
         }
     }
 
@@ -296,6 +685,59 @@ public class Dealer implements Runnable {
         return this.deck;
     }
 
+    /**
+     * @return - the number of milliseconds of turn time skipped in the current game by reshuffling tables that had no
+     * set (only with adaptive reshuffle).
+     */
+    public long getAvoidedIdleMillis() {
+        return avoidedIdleMillis;
+    }
+
+    /**
+     * @return - the number of times the table was reshuffled in the current game (fully or by swapping a single
+     * card), not counting the cards returned to the deck when the game ends.
+     */
+    public int getReshuffles() {
+        return reshuffles;
+    }
+
+    /**
+     * @return - the cpu time and allocations of the game threads.
+     */
+    public ThreadSampler getThreadSampler() {
+        return threadSampler;
+    }
+
+    /**
+     * @return - the number of iterations of the timer loop in the current game.
+     */
+    public long getLoopIterations() {
+        return loopIterations;
+    }
+
+    /**
+     * @return - the bytes the dealer thread allocated in the last game that ended (-1 if unknown).
+     */
+    public long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    /**
+     * @param player - the id of a player.
+     * @return - the number of legal sets the player claimed in the current game (the player's score once the point
+     * was awarded).
+     */
+    public int getAcceptedClaims(int player) {
+        return acceptedClaims[player];
+    }
+
+    /**
+     * @return - the latencies of the players' claims in the current game.
+     */
+    public ClaimLatencies getClaimLatencies() {
+        return claimLatencies;
+    }
+
 }
 
 
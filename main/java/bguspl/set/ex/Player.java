@@ -5,9 +5,15 @@ import java.util.Random;
 import java.util.concurrent.ArrayBlockingQueue;
 //import java.util.Queue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 
 import bguspl.set.Env;
+import bguspl.set.KeyRing;
+import bguspl.set.Metrics;
+import bguspl.set.Watchdog;
 
 /**
  * This class manages the players' threads and data
@@ -96,7 +102,37 @@ public class Player implements Runnable {
     /**
      * the player's lock
      */
-    public Object playerLock;
+    public final Lock playerLock;
+
+    /**
+     * signalled whenever the flag changes
+     */
+    private final Condition flagChanged;
+
+    /**
+     * The key presses of a human player, from the input thread to the player thread.
+     */
+    private final KeyRing keys;
+
+    /**
+     * True iff the player thread is waiting and has to be signalled when a key is pressed.
+     */
+    private volatile boolean awaitingKeys;
+
+    /**
+     * Key presses from before this time are dropped (e.g. keys pressed while the player was frozen).
+     */
+    private volatile long keysAcceptedFrom;
+
+    /**
+     * The milliseconds the player was frozen for (by points and penalties).
+     */
+    private final Metrics.Counter freezeMetric;
+
+    /**
+     * The heartbeat of the player loop.
+     */
+    private final Watchdog.Heartbeat heartbeat;
 
     /**
      * The class constructor.
@@ -115,12 +151,18 @@ public class Player implements Runnable {
         this.human = human;
         this.dealer = dealer;
         this.AIPlayerLock = new Object();
-        this.playerLock = new Object();
+        this.playerLock = new ReentrantLock();
+        this.flagChanged = playerLock.newCondition();
         this.flag = 2;
         this.queue = new ArrayBlockingQueue<Integer>(3);
         this.setQueue = new ArrayBlockingQueue<Integer>(3);
         this.checked = false;
         this.numOfTokens = 0;
+        this.keys = new KeyRing(16);
+        this.freezeMetric = Metrics.registry().counter("set_player_freeze_milliseconds_total",
+                "Time the player was frozen for by points and penalties.", "player", String.valueOf(id));
+        this.heartbeat = Watchdog.get().register("player", "player-" + id, env.config.watchdogStallMillis,
+                env.logger);
     }
 
     /**
@@ -132,10 +174,16 @@ public class Player implements Runnable {
         playerThread = Thread.currentThread();
 
         env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + "starting.");
+        Metrics.registry().registerCurrentThread();
+        dealer.getThreadSampler().addCurrentThread();
+        heartbeat.start();
         if (!human)
             createArtificialIntelligence();
 
         while (!terminate) {
+            awaitFlagChange(0);
+            if (human && flag == 0) consumeKeys();
+            boolean busy = flag != 0;
              if (flag == 1) {
                 point();
             }
@@ -144,25 +192,20 @@ public class Player implements Runnable {
             }
 
             if (!checked && flag == 5 && this.queue.remainingCapacity() == 0) {
-                synchronized (this) {
-                    synchronized (dealer.dealerLock){
-                        dealer.getDealersQueue().add(this.id);
-                        dealer.dealerLock.notifyAll();
-                    }
-                    while (flag == 5) {
-                        try {
-                            this.wait();
-                        } catch (InterruptedException ignored) {}
-                    }
-                }
-            } else {
+                dealer.requestCheck(this.id);
+                awaitFlagChange(5);
+                if (flag == 1 || flag == -1) dealer.getClaimLatencies().delivered(id);
+            } else if (flag != 0) {
                 setFlag(0);
             }
+            // keys pressed while the set was checked or while the player was frozen are not accepted
+            if (busy) keysAcceptedFrom = System.currentTimeMillis();
         }
         if (!human)
             try {
                 aiThread.join();
             } catch (InterruptedException ignored) {}
+        heartbeat.close();
         env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " terminated.");
     }
 
@@ -174,18 +217,23 @@ public class Player implements Runnable {
      */
     private void createArtificialIntelligence() {
         // note: this is a very very smart AI (!)
-        aiThread = new Thread(() -> {
+        aiThread = env.threadFactory.newThread(() -> {
             env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " starting.");
+            Metrics.registry().registerCurrentThread();
+            dealer.getThreadSampler().addCurrentThread();
 
+            Random rnd = new Random();
             while (!terminate) {
-
+                awaitFlag(0);
                 if (this.flag == 0) {
-                    Random rnd = new Random();
                     keyPressed(rnd.nextInt(table.slotToCard.length));
                 }
+                // let other (virtual) threads run while the table is being refilled
+                Thread.yield();
             }
             env.logger.log(Level.INFO, "Thread " + Thread.currentThread().getName() + " terminated.");
-        }, "computer-" + id);
+        });
+        aiThread.setName("computer-" + id);
         aiThread.start();
     }
 
@@ -195,6 +243,45 @@ public class Player implements Runnable {
     public void terminate() {
          removeAllThePlayerTokens();
         terminate = true;
+        playerLock.lock();
+        try {
+            flagChanged.signalAll();
+        } finally {
+            playerLock.unlock();
+        }
+    }
+
+    /**
+     * Called by the input thread when a key of a human player is pressed. The key is handled by the player thread.
+     *
+     * @param slot - the slot corresponding to the key pressed.
+     * @param when - the time the key was pressed (in milliseconds, as in KeyEvent.getWhen).
+     * @return - false iff the key was dropped because too many keys are pending.
+     */
+    public boolean enqueueKey(int slot, long when) {
+        if (!keys.offer(slot, when)) return false;
+        // only take the lock if the player thread may be waiting for the key
+        if (awaitingKeys) {
+            playerLock.lock();
+            try {
+                flagChanged.signalAll();
+            } finally {
+                playerLock.unlock();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Handles the pending key presses of a human player (called by the player thread).
+     */
+    private void consumeKeys() {
+        while (!keys.isEmpty()) {
+            int slot = keys.peekSlot();
+            long when = keys.peekWhen();
+            keys.remove();
+            if (when >= keysAcceptedFrom) keyPressed(slot);
+        }
     }
 
     /**
@@ -203,19 +290,27 @@ public class Player implements Runnable {
      * @param slot - the slot corresponding to the key pressed.
      */
     public void keyPressed(int slot) {
-         if (this.flag == 0 && table.slotToCard[slot] != null) {
-            if (!table.removeToken(this, slot)) {
-              if (queue.size()<3) {
-                  queue.add(slot);
-                  table.placeToken(this.id, slot);
-                  checked = false;
-                  if (queue.size() == 3){
-                      flag = 5;
-                  }
-              }
-            } else {
-                queue.remove(slot);
+        if (this.flag != 0) return;
+        boolean claim = false;
+        // the tokens and the queue change together, so the dealer never sees a token without its slot or vice versa
+        table.tableLock.lock();
+        try {
+            if (table.slotToCard[slot] != null) {
+                if (table.removeToken(this, slot)) {
+                    queue.remove(slot);
+                } else if (queue.size() < 3 && table.placeToken(this.id, slot)) {
+                    queue.add(slot);
+                    checked = false;
+                    claim = queue.size() == 3;
                 }
+            }
+        } finally {
+            table.tableLock.unlock();
+        }
+        // the flag is set outside of the table lock, which the dealer takes while holding the player lock
+        if (claim) {
+            dealer.getClaimLatencies().claimed(id);
+            setFlag(5);
         }
     }
 
@@ -227,14 +322,18 @@ public class Player implements Runnable {
      */
     public void point() {
          env.ui.setScore(id, ++score);
+        dealer.getClaimLatencies().displayed(id);
 
         long endTime = System.currentTimeMillis() + env.config.pointFreezeMillis;
+        freezeMetric.add(env.config.pointFreezeMillis);
         while (System.currentTimeMillis() < endTime) {
             env.ui.setFreeze(id, endTime-System.currentTimeMillis());
+            heartbeat.await(200);
             try {
                 Thread.sleep(200);
             } catch (InterruptedException ignored) {
             }
+            heartbeat.awake();
         }
         env.ui.setFreeze(id, 0);
         setFlag(0);
@@ -249,13 +348,18 @@ public class Player implements Runnable {
      */
     public void penalty() {
          long endTime = System.currentTimeMillis() + env.config.penaltyFreezeMillis;
+        freezeMetric.add(env.config.penaltyFreezeMillis);
+        env.ui.setFreeze(id, env.config.penaltyFreezeMillis);
+        dealer.getClaimLatencies().displayed(id);
 
         while (System.currentTimeMillis() < endTime) {
             env.ui.setFreeze(id, endTime-System.currentTimeMillis());
+            heartbeat.await(200);
             try {
                 Thread.sleep(200);
             } catch (InterruptedException ignored) {
             }
+            heartbeat.awake();
         }
             env.ui.setFreeze(id, 0);
         setFlag(0);
@@ -264,6 +368,27 @@ public class Player implements Runnable {
 
     }
 
+    /**
+     * Prepares the player for a new game. The player (and computer player) threads keep running.
+     *
+     * @post - the player's score is 0 and the player has no tokens.
+     */
+    public void reset() {
+        playerLock.lock();
+        try {
+            queue.clear();
+            setQueue.clear();
+            numOfTokens = 0;
+            checked = false;
+            score = 0;
+            keysAcceptedFrom = System.currentTimeMillis();
+            // releases the player if it is waiting for the dealer to check a set
+            setFlag(2);
+        } finally {
+            playerLock.unlock();
+        }
+    }
+
     public int score() {
         return score;
     }
@@ -277,11 +402,56 @@ public class Player implements Runnable {
     }
 
     public void setFlag(int num){
-        synchronized (playerLock){
+        playerLock.lock();
+        try {
             this.flag = num;
-            playerLock.notify();
+            flagChanged.signalAll();
+        } finally {
+            playerLock.unlock();
         }
+    }
 
+    /**
+     * Blocks until the flag is different from the given value or the player is terminated. While the flag is 0, a
+     * human player also stops waiting when a key is pressed.
+     *
+     * @param num - the current value of the flag.
+     */
+    private void awaitFlagChange(int num) {
+        // waiting for keys or for the dealer to activate the player is not a stall, waiting for a verdict is
+        if (num == 0) heartbeat.idle();
+        else heartbeat.beat();
+        playerLock.lock();
+        try {
+            awaitingKeys = human && num == 0;
+            while (flag == num && !terminate && !(awaitingKeys && !keys.isEmpty())) {
+                try {
+                    flagChanged.await();
+                } catch (InterruptedException ignored) {}
+            }
+        } finally {
+            awaitingKeys = false;
+            playerLock.unlock();
+            heartbeat.beat();
+        }
+    }
+
+    /**
+     * Blocks until the flag equals the given value or the player is terminated.
+     *
+     * @param num - the expected value of the flag.
+     */
+    private void awaitFlag(int num) {
+        playerLock.lock();
+        try {
+            while (flag != num && !terminate) {
+                try {
+                    flagChanged.await();
+                } catch (InterruptedException ignored) {}
+            }
+        } finally {
+            playerLock.unlock();
+        }
     }
 
     public int getFlag(){
@@ -289,11 +459,15 @@ public class Player implements Runnable {
     }
 
     public void removeAllThePlayerTokens(){
-        for (int i=0; i<queue.size(); i++){
-            table.removeToken(this,queue.poll());
-            numOfTokens--;
+        table.tableLock.lock();
+        try {
+            while (!queue.isEmpty()) {
+                table.removeToken(this, queue.poll());
+                numOfTokens--;
+            }
+        } finally {
+            table.tableLock.unlock();
         }
-
     }
 
     public  int getNumOfTokens (){
@@ -1,6 +1,8 @@
 package bguspl.set.ex;
 
 import bguspl.set.Env;
+import bguspl.set.GameEvents;
+import bguspl.set.Metrics;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
@@ -42,6 +44,27 @@ public class Table {
      */
     public final Lock tableLock;
 
+    /**
+     * The empty slots (the first emptyCount entries, in no particular order) and the index of each slot in it (-1 if
+     * the slot has a card), so finding and updating the empty slots does not scan the whole table (guarded by
+     * tableLock).
+     */
+    private final int[] emptySlots;
+    private final int[] emptyIndex;
+    private int emptyCount;
+
+    /**
+     * The metrics of the table (shared by the tables of all the rooms).
+     */
+    private static final Metrics.Counter placedMetric = Metrics.registry().counter("set_table_cards_total",
+            "Cards placed on or removed from the table.", "operation", "place");
+    private static final Metrics.Counter removedMetric = Metrics.registry().counter("set_table_cards_total",
+            "Cards placed on or removed from the table.", "operation", "remove");
+    private static final Metrics.Counter tokensPlacedMetric = Metrics.registry().counter("set_tokens_total",
+            "Tokens placed on or removed from the table.", "operation", "place");
+    private static final Metrics.Counter tokensRemovedMetric = Metrics.registry().counter("set_tokens_total",
+            "Tokens placed on or removed from the table.", "operation", "remove");
+
     /**
      * Constructor for testing.
      *
@@ -57,6 +80,11 @@ public class Table {
         this.slotToCard = slotToCard;
         this.cardToSlot = cardToSlot;
         this.tableLock = new ReentrantLock();
+        emptySlots = new int[slotToCard.length];
+        emptyIndex = new int[slotToCard.length];
+        Arrays.fill(emptyIndex, -1);
+        for (int slot = 0; slot < slotToCard.length; slot++)
+            if (slotToCard[slot] == null) markEmpty(slot);
         tokenToSlot = new Integer[slotToCard.length][env.config.players];
         for (int i = 0; i < tokenToSlot.length; i++) {
             for (int j = 0; j < tokenToSlot[i].length; j++) {
@@ -75,6 +103,24 @@ public class Table {
         this(env, new Integer[env.config.tableSize], new Integer[env.config.deckSize]);
     }
 
+    /**
+     * Removes all the cards and tokens from the table at once (without the table delay), for a new game.
+     * The user interface is reset separately.
+     */
+    public void reset() {
+        tableLock.lock();
+        try {
+            Arrays.fill(slotToCard, null);
+            Arrays.fill(cardToSlot, null);
+            for (Integer[] slotTokens : tokenToSlot)
+                Arrays.fill(slotTokens, 0);
+            for (int slot = 0; slot < slotToCard.length; slot++)
+                markEmpty(slot);
+        } finally {
+            tableLock.unlock();
+        }
+    }
+
     /**
      * This method prints all possible legal sets of cards that are currently on the
      * table.
@@ -96,12 +142,56 @@ public class Table {
      *
      * @return - the number of cards on the table.
      */
-    public synchronized int countCards() {
-        int cards = 0;
-        for (Integer card : slotToCard)
-            if (card != null)
-                ++cards;
-        return cards;
+    public int countCards() {
+        tableLock.lock();
+        try {
+            int cards = 0;
+            for (Integer card : slotToCard)
+                if (card != null)
+                    ++cards;
+            return cards;
+        } finally {
+            tableLock.unlock();
+        }
+    }
+
+    private void markEmpty(int slot) {
+        if (emptyIndex[slot] >= 0) return;
+        emptyIndex[slot] = emptyCount;
+        emptySlots[emptyCount++] = slot;
+    }
+
+    private void markFilled(int slot) {
+        int index = emptyIndex[slot];
+        if (index < 0) return;
+        // move the last empty slot into the hole
+        int last = emptySlots[--emptyCount];
+        emptySlots[index] = last;
+        emptyIndex[last] = index;
+        emptyIndex[slot] = -1;
+    }
+
+    /**
+     * Copies the empty slots of the table.
+     *
+     * @param slots - an array with room for all the slots of the table, to copy the empty slots to.
+     * @return - the number of empty slots (copied to the beginning of the array).
+     */
+    public int emptySlots(int[] slots) {
+        tableLock.lock();
+        try {
+            System.arraycopy(emptySlots, 0, slots, 0, emptyCount);
+            return emptyCount;
+        } finally {
+            tableLock.unlock();
+        }
+    }
+
+    private static void commit(GameEvents.TableChange event, String operation, int cards) {
+        if (!event.shouldCommit()) return;
+        event.operation = operation;
+        event.cards = cards;
+        event.commit();
     }
 
     /**
@@ -113,60 +203,136 @@ public class Table {
      * @post - the card placed is on the table, in the assigned slot.
      */
     public void placeCard(int card, int slot) {
-        synchronized(tableLock){
+        GameEvents.TableChange event = new GameEvents.TableChange();
+        event.begin();
+        tableLock.lock();
         try {
-            Thread.sleep(env.config.tableDelayMillis);
-        } catch (InterruptedException ignored) {
+            cardToSlot[card] = slot;
+            slotToCard[slot] = card;
+            markFilled(slot);
+
+            env.ui.placeCard(card, slot);
+        } finally {
+            tableLock.unlock();
+            placedMetric.inc();
+            commit(event, "place", 1);
         }
+    }
 
-        cardToSlot[card] = slot;
-        slotToCard[slot] = card;
+    /**
+     * Places cards on the table in grid slots as a single change (one lock acquisition and one ui update).
+     *
+     * @param cards - the card ids to place.
+     * @param slots - the slots in which the cards should be placed (respectively).
+     *
+     * @post - the cards placed are on the table, in the assigned slots.
+     */
+    public void placeCards(int[] cards, int[] slots) {
+        GameEvents.TableChange event = new GameEvents.TableChange();
+        event.begin();
+        tableLock.lock();
+        try {
+            for (int i = 0; i < cards.length; i++) {
+                cardToSlot[cards[i]] = slots[i];
+                slotToCard[slots[i]] = cards[i];
+                markFilled(slots[i]);
+            }
+            env.ui.placeCards(cards, slots);
+        } finally {
+            tableLock.unlock();
+            placedMetric.add(cards.length);
+            commit(event, "place", cards.length);
+        }
+    }
 
-                    env.ui.placeCard(card, slot);
+    /**
+     * Removes the cards from grid slots on the table, and the tokens of all the players on them, as a single change
+     * (one lock acquisition and one ui update).
+     *
+     * @param slots - the slots from which to remove the cards.
+     */
+    public void removeCards(int[] slots) {
+        GameEvents.TableChange event = new GameEvents.TableChange();
+        event.begin();
+        tableLock.lock();
+        try {
+            for (int slot : slots) {
+                cardToSlot[slotToCard[slot]] = null;
+                slotToCard[slot] = null;
+                Arrays.fill(tokenToSlot[slot], 0);
+                markEmpty(slot);
+            }
+            env.ui.removeCards(slots);
+        } finally {
+            tableLock.unlock();
+            removedMetric.add(slots.length);
+            commit(event, "remove", slots.length);
+        }
     }
-}
 
     /**
-     * Removes a card from a grid slot on the table.
+     * Removes a card from a grid slot on the table, and the tokens of all the players on it.
      * 
      * @param slot - the slot from which to remove the card.
      */
     public void removeCard(int slot) {
-        synchronized (tableLock) {
-            try {
-                Thread.sleep(env.config.tableDelayMillis);
-            } catch (InterruptedException ignored) {}
+        GameEvents.TableChange event = new GameEvents.TableChange();
+        event.begin();
+        tableLock.lock();
+        try {
             env.ui.removeCard(slot);
             env.ui.removeTokens(slot);
             cardToSlot[slotToCard[slot]] = null;
             slotToCard[slot] = null;
+            Arrays.fill(tokenToSlot[slot], 0);
+            markEmpty(slot);
+        } finally {
+            tableLock.unlock();
+            removedMetric.inc();
+            commit(event, "remove", 1);
         }
-
     }
 
     /**
      * Removes a set from the table if the set that was found is legal
      */
     public void removeSet(Player player, List<Integer> deck) {
-        Iterator<Integer> it = player.getQueue().iterator();
-        while (it.hasNext()){
-            int slot = it.next();
-            removeToken(player, slot);
-            deck.remove(slotToCard[slot]);
-            removeCard(slot);
+        tableLock.lock();
+        try {
+            int[] slots = new int[player.getQueue().size()];
+            int index = 0;
+            Iterator<Integer> it = player.getQueue().iterator();
+            while (it.hasNext()){
+                int slot = it.next();
+                removeToken(player, slot);
+                deck.remove(slotToCard[slot]);
+                slots[index++] = slot;
+            }
+            removeCards(slots);
+            player.getQueue().clear();
+        } finally {
+            tableLock.unlock();
         }
-        player.getQueue().clear();
     }
 
     /**
-     * Places a player token on a grid slot.
+     * Places a player token on a grid slot, if the slot has a card.
      * 
      * @param player - the player the token belongs to.
      * @param slot   - the slot on which to place the token.
+     * @return - true iff the token was placed (false if the card was removed from the slot meanwhile).
      */
-    public void placeToken(int player, int slot) {
-                    env.ui.placeToken(player, slot);
-        tokenToSlot[slot][player] = 1;
+    public boolean placeToken(int player, int slot) {
+        tableLock.lock();
+        try {
+            if (slotToCard[slot] == null) return false;
+            tokenToSlot[slot][player] = 1;
+            env.ui.placeToken(player, slot);
+        } finally {
+            tableLock.unlock();
+        }
+        tokensPlacedMetric.inc();
+        return true;
     }
 
     /**
@@ -177,13 +343,16 @@ public class Table {
      * @return - true iff a token was successfully removed.
      */
     public boolean removeToken(Player player, int slot) {
-                    if (tokenToSlot[slot][player.id] == 1) {
-                        env.ui.removeToken(player.id, slot);
-                        tokenToSlot[slot][player.id] = 0;
-                        return true;
+        tableLock.lock();
+        try {
+            if (tokenToSlot[slot][player.id] != 1) return false;
+            tokenToSlot[slot][player.id] = 0;
+            env.ui.removeToken(player.id, slot);
+        } finally {
+            tableLock.unlock();
         }
-
-        return false;
+        tokensRemovedMetric.inc();
+        return true;
     }
 
 
@@ -0,0 +1,74 @@
+package bguspl.set;
+
+import bguspl.set.ex.Player;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.swing.JPanel;
+import java.awt.event.KeyEvent;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class InputManagerTest {
+
+    /**
+     * The key codes of the player: 4 keys for a table of 16 slots, so each slot is selected with two presses.
+     */
+    private static final int[] KEYS = {KeyEvent.VK_Q, KeyEvent.VK_W, KeyEvent.VK_E, KeyEvent.VK_R};
+
+    private final JPanel source = new JPanel();
+    private Player player;
+    private InputManager inputManager;
+
+    @BeforeEach
+    void setUp() {
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        Properties properties = new Properties();
+        properties.setProperty("HumanPlayers", "1");
+        properties.setProperty("ComputerPlayers", "0");
+        properties.setProperty("Rows", "4");
+        properties.setProperty("Columns", "4");
+        properties.setProperty("PlayerKeys1", KEYS[0] + "," + KEYS[1] + "," + KEYS[2] + "," + KEYS[3]);
+        properties.setProperty("KeyDebounceSeconds", "0.15");
+        properties.setProperty("LogLevel", "OFF");
+        Config config = new Config(logger, properties);
+        player = mock(Player.class);
+        inputManager = new InputManager(logger, config, new Player[]{player});
+    }
+
+    @Test
+    void keyPressed_doubleTapSelectsSlotOfItsOwnGroup() {
+        press(KEYS[1], 1000);
+        release(KEYS[1], 1030);
+        press(KEYS[1], 1060);
+        verify(player).enqueueKey(5, 1060);
+    }
+
+    @Test
+    void keyPressed_heldKeyRepeatsAreDropped() {
+        press(KEYS[1], 1000);
+        press(KEYS[1], 1030);
+        press(KEYS[1], 1060);
+        verify(player, never()).enqueueKey(anyInt(), anyLong());
+        release(KEYS[1], 1090);
+        press(KEYS[2], 1120);
+        verify(player).enqueueKey(6, 1120);
+    }
+
+    private void press(int keyCode, long when) {
+        inputManager.keyPressed(
+                new KeyEvent(source, KeyEvent.KEY_PRESSED, when, 0, keyCode, KeyEvent.CHAR_UNDEFINED));
+    }
+
+    private void release(int keyCode, long when) {
+        inputManager.keyReleased(
+                new KeyEvent(source, KeyEvent.KEY_RELEASED, when, 0, keyCode, KeyEvent.CHAR_UNDEFINED));
+    }
+}
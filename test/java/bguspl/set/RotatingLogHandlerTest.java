@@ -0,0 +1,62 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RotatingLogHandlerTest {
+
+    private static final String NAME = "10-19_12-00-00";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void retention_deletesOldestGameLogsOnly() throws IOException, InterruptedException {
+        // a segment left by an earlier run, and files the game did not write, all older than the handler's segments
+        Path earlierRun = Files.writeString(directory.resolve("1-2_03-04-05.3.log.gz"), "x".repeat(8192));
+        Path otherLog = Files.writeString(directory.resolve("other.log"), "x".repeat(8192));
+        Path unrelated = Files.writeString(directory.resolve("notes.txt"), "x".repeat(8192));
+        FileTime old = FileTime.from(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1), TimeUnit.MILLISECONDS);
+        for (Path path : new Path[]{earlierRun, otherLog, unrelated})
+            Files.setLastModifiedTime(path, old);
+
+        RotatingLogHandler handler = new RotatingLogHandler(directory, NAME, Main.LOG_FILE_NAMES);
+        handler.setLimits(1024, 0, 2048);
+        String message = "y".repeat(100);
+        for (int i = 0; i < 500; i++)
+            handler.publish(new LogRecord(Level.INFO, message + i));
+        handler.close();
+
+        // wait for the compressor to handle the last segment
+        for (int i = 0; i < 100 && segments(".log") > 0; i++)
+            Thread.sleep(50);
+
+        assertEquals(0, segments(".log"));
+        assertFalse(Files.exists(earlierRun), "the log of an earlier run was kept");
+        assertTrue(Files.exists(otherLog));
+        assertTrue(Files.exists(unrelated));
+        assertTrue(Files.exists(directory.resolve(NAME + ".log")));
+        assertTrue(segments(".log.gz") > 0);
+        assertFalse(Files.exists(directory.resolve(NAME + ".1.log.gz")), "the oldest segment was kept");
+    }
+
+    private long segments(String suffix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.matches(NAME + "\\.\\d+" + suffix.replace(".", "\\."))).count();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Properties;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class UtilImplTest {
+
+    /**
+     * The bytes testSet may allocate per call.
+     */
+    private static final long TEST_SET_BUDGET = 0;
+
+    private static final int CALLS = 1_000_000;
+
+    private Config config;
+    private Util util;
+
+    @BeforeEach
+    void setUp() {
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        Properties properties = new Properties();
+        properties.setProperty("LogLevel", "OFF");
+        config = new Config(logger, properties);
+        util = new UtilImpl(config);
+    }
+
+    @Test
+    void testSet_legalAndIllegalSets() {
+        assertTrue(util.testSet(new int[]{0, 1, 2}));
+        assertFalse(util.testSet(new int[]{0, 1, 3}));
+    }
+
+    @Test
+    void testSet_withinAllocationBudget() {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threadBean.isThreadAllocatedMemorySupported() && threadBean.isThreadAllocatedMemoryEnabled());
+
+        Random random = new Random(0);
+        int[][] sets = new int[1024][3];
+        for (int[] set : sets)
+            for (int i = 0; i < set.length; i++)
+                set[i] = random.nextInt(config.deckSize);
+
+        // warm up so the measured calls run compiled code
+        int legal = 0;
+        for (int i = 0; i < CALLS; i++)
+            if (util.testSet(sets[i & 1023])) legal++;
+        long before = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        for (int i = 0; i < CALLS; i++)
+            if (util.testSet(sets[i & 1023])) legal++;
+        long bytesPerCall = (threadBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - before) / CALLS;
+
+        assertTrue(legal > 0);
+        assertTrue(bytesPerCall <= TEST_SET_BUDGET,
+                "testSet allocated " + bytesPerCall + " bytes per call (budget " + TEST_SET_BUDGET + ")");
+    }
+}
@@ -0,0 +1,96 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.GameRoom;
+import bguspl.set.GameThreads;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class DealerTest {
+
+    /**
+     * The bytes the dealer may allocate per iteration of its timer loop.
+     */
+    private static final long LOOP_BUDGET = 512;
+
+    @Test
+    void timerLoop_withinAllocationBudget() throws InterruptedException {
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threadBean.isThreadAllocatedMemorySupported() && threadBean.isThreadAllocatedMemoryEnabled());
+
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        Properties properties = new Properties();
+        properties.setProperty("HumanPlayers", "0");
+        properties.setProperty("ComputerPlayers", "2");
+        properties.setProperty("UserInterface", "None");
+        // a small deck and short turns, so the random computer players finish the games quickly
+        properties.setProperty("FeatureCount", "3");
+        properties.setProperty("TurnTimeoutSeconds", "0.5");
+        properties.setProperty("TurnTimeoutWarningSeconds", "0.1");
+        properties.setProperty("TableDelaySeconds", "0");
+        properties.setProperty("PointFreezeSeconds", "0");
+        properties.setProperty("PenaltyFreezeSeconds", "0");
+        properties.setProperty("EndGamePauseSeconds", "0");
+        // the second game is measured, after the first one warmed up the code
+        properties.setProperty("Rematches", "1");
+        properties.setProperty("LogLevel", "OFF");
+        Config config = new Config(logger, properties);
+
+        GameRoom room = new GameRoom(0, logger, config, players -> null, GameThreads.factory(config, logger));
+        Thread dealerThread = new Thread(room, "dealer");
+        dealerThread.start();
+        boolean ended = room.awaitEnd(120_000);
+        if (!ended) room.terminate();
+        dealerThread.join();
+        assertTrue(ended, "the games did not end in time");
+
+        long iterations = room.dealer.getLoopIterations();
+        long allocated = room.dealer.getAllocatedBytes();
+        assumeTrue(allocated >= 0);
+        assertTrue(iterations > 0);
+        long bytesPerIteration = allocated / iterations;
+        assertTrue(bytesPerIteration <= LOOP_BUDGET,
+                "the dealer allocated " + bytesPerIteration + " bytes per timer loop iteration (budget "
+                        + LOOP_BUDGET + ", " + iterations + " iterations)");
+    }
+
+    @Test
+    void minimalReshuffle_fullTableOfTwoCards() throws InterruptedException {
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        Properties properties = new Properties();
+        properties.setProperty("HumanPlayers", "0");
+        properties.setProperty("ComputerPlayers", "1");
+        properties.setProperty("UserInterface", "None");
+        properties.setProperty("FeatureCount", "3");
+        properties.setProperty("Rows", "1");
+        properties.setProperty("Columns", "2");
+        properties.setProperty("MinimalReshuffle", "True");
+        properties.setProperty("TurnTimeoutSeconds", "0.1");
+        properties.setProperty("TurnTimeoutWarningSeconds", "0");
+        properties.setProperty("TableDelaySeconds", "0");
+        properties.setProperty("EndGamePauseSeconds", "0");
+        properties.setProperty("LogLevel", "OFF");
+        Config config = new Config(logger, properties);
+
+        // no set fits on the table, so the game only ends when it is terminated after a few reshuffles
+        GameRoom room = new GameRoom(0, logger, config, players -> null, GameThreads.factory(config, logger));
+        Thread dealerThread = new Thread(room, "dealer");
+        dealerThread.setDaemon(true);
+        dealerThread.start();
+        Thread.sleep(1000);
+        room.terminate();
+        dealerThread.join(10_000);
+        assertFalse(dealerThread.isAlive(), "the dealer is stuck reshuffling the table");
+    }
+}
@@ -0,0 +1,315 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.GameRoom;
+import bguspl.set.GameThreads;
+import bguspl.set.UserInterface;
+import bguspl.set.Watchdog;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Plays short games between computer players with random spins in the user interface calls (RandomSpinMin and
+ * RandomSpinMax), random numbers of players and random timings, and checks the invariants of the table after every
+ * user interface update:
+ * <ul>
+ * <li>each card is in at most one slot and the slot and card mappings agree,</li>
+ * <li>tokens are only placed on slots with cards,</li>
+ * <li>each player has at most 3 tokens,</li>
+ * <li>each score displayed equals the number of legal sets the player claimed.</li>
+ * </ul>
+ * A game that does not end in time is terminated (random players may take long to find the sets of a big deck). If
+ * threads of the game are deadlocked, or the game does not stop when terminated, the test fails with a dump of the
+ * threads.
+ */
+class StressTest {
+
+    /**
+     * The games are random, but the same in every run.
+     */
+    private static final long SEED = 20261019;
+    private static final int GAMES = 8;
+    private static final long GAME_TIMEOUT_MILLIS = 5000;
+
+    /**
+     * The number of violations reported per game (the rest are only counted).
+     */
+    private static final int MAX_REPORTED = 5;
+
+    @Test
+    void randomGames_keepTableInvariants() throws InterruptedException {
+        Random random = new Random(SEED);
+        long totalMillis = 0;
+        long totalSets = 0;
+        long totalUpdates = 0;
+        for (int game = 0; game < GAMES; game++) {
+            Properties properties = randomProperties(random);
+            Checker checker = new Checker();
+            long startTime = System.currentTimeMillis();
+            boolean ended = play(properties, checker, GAME_TIMEOUT_MILLIS);
+            long millis = Math.max(1, System.currentTimeMillis() - startTime);
+            long sets = checker.sets();
+            long updates = checker.updates();
+            totalMillis += millis;
+            totalSets += sets;
+            totalUpdates += updates;
+            System.out.printf("game %d%s in %d ms, %d sets (%.1f/s), %d ui updates (%.0f/s), %s%n", game + 1,
+                    ended ? "" : " (stopped at the time limit)", millis, sets, sets * 1000.0 / millis, updates,
+                    updates * 1000.0 / millis, describe(properties));
+
+            String name = "game " + (game + 1) + " (" + describe(properties) + ")";
+            assertTrue(checker.hang().isEmpty(), name + " hung:\n" + checker.hang());
+            assertEquals(0, checker.violations(), () -> name + " broke the table invariants:\n  "
+                    + String.join("\n  ", checker.reported())
+                    + (checker.violations() > checker.reported().size()
+                    ? "\n  ... " + (checker.violations() - checker.reported().size()) + " more violations." : ""));
+        }
+        System.out.printf("%d games: %d sets (%.1f/s), %d ui updates (%.0f/s).%n", GAMES, totalSets,
+                totalSets * 1000.0 / Math.max(1, totalMillis), totalUpdates,
+                totalUpdates * 1000.0 / Math.max(1, totalMillis));
+    }
+
+    private static Properties randomProperties(Random random) {
+        Properties properties = new Properties();
+        properties.setProperty("HumanPlayers", "0");
+        properties.setProperty("ComputerPlayers", Integer.toString(1 + random.nextInt(8)));
+        properties.setProperty("VirtualThreads", Boolean.toString(random.nextBoolean()));
+        long spinMin = random.nextInt(4) == 0 ? 0 : random.nextInt(50);
+        properties.setProperty("RandomSpinMin", Long.toString(spinMin));
+        properties.setProperty("RandomSpinMax", Long.toString(spinMin + random.nextInt(200)));
+        properties.setProperty("FeatureCount", random.nextInt(4) == 0 ? "4" : "3");
+        properties.setProperty("TurnTimeoutSeconds", Double.toString(0.2 + random.nextInt(9) / 10.0));
+        properties.setProperty("TurnTimeoutWarningSeconds", "0.1");
+        properties.setProperty("PointFreezeSeconds", random.nextBoolean() ? "0" : "0.05");
+        properties.setProperty("PenaltyFreezeSeconds", random.nextBoolean() ? "0" : "0.05");
+        properties.setProperty("TableDelaySeconds", "0");
+        properties.setProperty("MinimalReshuffle", Boolean.toString(random.nextBoolean()));
+        properties.setProperty("AdaptiveReshuffle", Boolean.toString(random.nextBoolean()));
+        properties.setProperty("EndGamePauseSeconds", "0");
+        properties.setProperty("Rematches", Integer.toString(random.nextInt(2)));
+        properties.setProperty("LogLevel", "OFF");
+        properties.setProperty("WatchdogStallSeconds", "0");
+        return properties;
+    }
+
+    private static String describe(Properties properties) {
+        return properties.getProperty("ComputerPlayers") + " players, "
+                + (Boolean.parseBoolean(properties.getProperty("VirtualThreads")) ? "virtual" : "platform")
+                + " threads, spin " + properties.getProperty("RandomSpinMin") + "-"
+                + properties.getProperty("RandomSpinMax") + ", " + properties.getProperty("FeatureCount")
+                + " features, turn " + properties.getProperty("TurnTimeoutSeconds") + " s, rematches "
+                + properties.getProperty("Rematches") + ".";
+    }
+
+    /**
+     * Plays a game (and its rematches) with the checker as its user interface, and terminates it at the time limit.
+     *
+     * @return - true iff the game ended in time.
+     */
+    private static boolean play(Properties properties, Checker checker, long timeoutMillis)
+            throws InterruptedException {
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        Config config = new Config(logger, properties);
+        GameRoom room = new GameRoom(0, logger, config, players -> checker, GameThreads.factory(config, logger));
+        checker.watch(room.table, room.dealer, room.players);
+
+        Thread dealerThread = new Thread(room, "dealer");
+        dealerThread.start();
+        if (room.awaitEnd(timeoutMillis)) {
+            dealerThread.join();
+            return true;
+        }
+        if (ManagementFactory.getThreadMXBean().findDeadlockedThreads() != null) {
+            checker.hung("deadlock!", dealerThread);
+            room.terminate();
+            return false;
+        }
+        room.terminate();
+        dealerThread.join(5000);
+        if (dealerThread.isAlive()) checker.hung("the game did not stop when terminated.", dealerThread);
+        return false;
+    }
+
+    /**
+     * A user interface that checks the invariants of the table on every update instead of displaying it.
+     */
+    private static class Checker implements UserInterface {
+
+        private volatile Table table;
+        private volatile Dealer dealer;
+        private volatile Player[] players;
+
+        private final List<String> reported = new ArrayList<>();
+        private int violations;
+        private long updates;
+        private int sets;
+        private String hang = "";
+
+        private void watch(Table table, Dealer dealer, Player[] players) {
+            this.players = players;
+            this.dealer = dealer;
+            this.table = table;
+        }
+
+        private synchronized void violation(String operation, String message) {
+            if (++violations <= MAX_REPORTED)
+                reported.add("after " + operation + " on " + Thread.currentThread().getName() + ": " + message);
+        }
+
+        private synchronized int violations() {
+            return violations;
+        }
+
+        private synchronized List<String> reported() {
+            return reported;
+        }
+
+        private synchronized long updates() {
+            return updates;
+        }
+
+        private synchronized long sets() {
+            return sets;
+        }
+
+        private String hang() {
+            return hang;
+        }
+
+        /**
+         * Records the state of the threads of a game that is stuck.
+         */
+        private void hung(String reason, Thread dealerThread) {
+            hang = "  " + reason + " " + Watchdog.get().dump(dealerThread);
+        }
+
+        /**
+         * Checks the table (under its lock, which the table holds while updating the cards).
+         */
+        private void check(String operation) {
+            Table table = this.table;
+            if (table == null) return;
+            synchronized (this) {
+                updates++;
+            }
+            table.tableLock.lock();
+            try {
+                int[] tokens = new int[players.length];
+                for (int slot = 0; slot < table.slotToCard.length; slot++) {
+                    Integer card = table.slotToCard[slot];
+                    if (card != null && !Integer.valueOf(slot).equals(table.cardToSlot[card]))
+                        violation(operation, "card " + card + " is in slot " + slot + " but mapped to slot "
+                                + table.cardToSlot[card] + ".");
+                    for (int player = 0; player < players.length; player++) {
+                        if (table.tokenToSlot[slot][player] != 1) continue;
+                        tokens[player]++;
+                        if (card == null)
+                            violation(operation, "player " + player + " has a token on the empty slot " + slot + ".");
+                    }
+                }
+                for (int card = 0; card < table.cardToSlot.length; card++) {
+                    Integer slot = table.cardToSlot[card];
+                    if (slot != null && !Integer.valueOf(card).equals(table.slotToCard[slot]))
+                        violation(operation, "card " + card + " is mapped to slot " + slot + " which holds card "
+                                + table.slotToCard[slot] + ".");
+                }
+                for (int player = 0; player < players.length; player++)
+                    if (tokens[player] > 3)
+                        violation(operation, "player " + player + " has " + tokens[player] + " tokens.");
+            } finally {
+                table.tableLock.unlock();
+            }
+        }
+
+        @Override
+        public void placeCard(int card, int slot) {
+            check("placeCard");
+        }
+
+        @Override
+        public void removeCard(int slot) {
+            check("removeCard");
+        }
+
+        @Override
+        public void placeCards(int[] cards, int[] slots) {
+            check("placeCards");
+        }
+
+        @Override
+        public void removeCards(int[] slots) {
+            check("removeCards");
+        }
+
+        @Override
+        public void placeToken(int player, int slot) {
+            check("placeToken");
+        }
+
+        @Override
+        public void removeTokens() {
+            check("removeTokens");
+        }
+
+        @Override
+        public void removeTokens(int slot) {
+            check("removeTokens");
+        }
+
+        @Override
+        public void removeToken(int player, int slot) {
+            check("removeToken");
+        }
+
+        @Override
+        public void setCountdown(long millies, boolean warn) {
+            check("setCountdown");
+        }
+
+        @Override
+        public void setElapsed(long millies) {
+            check("setElapsed");
+        }
+
+        @Override
+        public void setFreeze(int player, long millies) {
+            check("setFreeze");
+        }
+
+        @Override
+        public void setScore(int player, int score) {
+            check("setScore");
+            int claimed = dealer.getAcceptedClaims(player);
+            if (score != claimed)
+                violation("setScore", "player " + player + " has a score of " + score + " but claimed " + claimed
+                        + " legal sets.");
+            synchronized (this) {
+                if (score > 0) sets++;
+            }
+        }
+
+        @Override
+        public void announceWinner(int[] players) {
+            check("announceWinner");
+        }
+
+        @Override
+        public void awaitAnimations() {}
+
+        @Override
+        public void reset() {}
+
+        @Override
+        public void dispose() {}
+    }
+}